@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/** Configurations and messages shared by the benchmarks.
+ *  @author Seongho Lee
+ */
+final class Configs {
+
+    /** The naval rotors, as in testing/correct/default.conf. */
+    static final String NAVAL_CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + " V MZ      (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + " VI MZM    (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + " VII MZM   (ANOUPFRIMBZTLWKSVEGCJYDHXQ)\n"
+        + " VIII MZM  (AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " Gamma N   (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n"
+        + " C R       (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "           (QZ) (SX) (UY)\n";
+
+    /** The setting line used for all benchmark messages. */
+    static final String SETTINGS = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR)";
+
+    /** Number of message lines in messageFile(). */
+    static final int FILE_LINES = 100000;
+
+    /** Return a temporary file named after PREFIX containing CONTENTS,
+     *  deleted when the JVM exits. */
+    static File write(String prefix, String contents) throws IOException {
+        File file = File.createTempFile(prefix, ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /** Return a machine read from NAVAL_CONFIG and set up by SETTINGS. */
+    static Machine navalMachine() {
+        try {
+            File config = write("config", NAVAL_CONFIG);
+            Machine machine = Main.readConfig(config.getPath());
+            String[] fields = SETTINGS.split(" ");
+            machine.insertRotors(new String[] {
+                fields[1], fields[2], fields[3], fields[4], fields[5] });
+            machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)",
+                                                 machine.spec().alphabet()));
+            machine.setRotors(fields[6]);
+            config.delete();
+            return machine;
+        } catch (IOException excp) {
+            throw new EnigmaException(excp.getMessage());
+        }
+    }
+
+    /** Return a message of N pseudo-random letters in groups of five. */
+    static String message(int n) {
+        StringBuilder result = new StringBuilder(n + n / 5);
+        long seed = 12345;
+        for (int i = 0; i < n; i += 1) {
+            if (i > 0 && i % 5 == 0) {
+                result.append(' ');
+            }
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            result.append((char) ('A' + (int) ((seed >>> 33) % 26)));
+        }
+        return result.toString();
+    }
+
+    /** Return the contents of an input file: SETTINGS followed by
+     *  FILE_LINES lines of 60 letters. */
+    static String messageFile() {
+        StringBuilder result = new StringBuilder(SETTINGS).append('\n');
+        String line = message(60);
+        for (int i = 0; i < FILE_LINES; i += 1) {
+            result.append(line).append('\n');
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,192 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks for the per-character operations of the enigma package:
+ *  Permutation.permute, Rotor.convertForward, and Machine.convert on
+ *  single characters and on long messages, and StateCycle.convert on long
+ *  messages.  Per-character benchmarks report nanoseconds per character;
+ *  message benchmarks are run on messages of MESSAGE_SIZE characters, so
+ *  that their score in operations per second times MESSAGE_SIZE is
+ *  characters per second.
+ *  @author Seongho Lee
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MachineBenchmark {
+
+    /** Number of characters converted per invocation of the per-character
+     *  benchmarks. */
+    static final int BATCH = 1024;
+
+    /** Size of the messages converted by the message benchmarks. */
+    static final int MESSAGE_SIZE = 1 << 20;
+
+    /** Largest StateCycle table, in bytes. */
+    static final long CYCLE_BUDGET = 1L << 28;
+
+    /** Capacity of the substitution cache of the cached machine. */
+    static final int CACHE_CAPACITY = 20000;
+
+    /** A machine like the one under test, but with a substitution cache of
+     *  CACHE_CAPACITY entries.  It is a separate state so that only the
+     *  benchmarks that ask for it pay for building its cache. */
+    @State(Scope.Thread)
+    public static class Cached {
+
+        /** The cached machine. */
+        private Machine _machine;
+
+        /** Set up a cached naval machine. */
+        @Setup
+        public void setUp() {
+            _machine = Configs.navalMachine();
+            _machine.setCacheCapacity(CACHE_CAPACITY);
+        }
+
+    }
+
+    /** The machine under test. */
+    private Machine _machine;
+
+    /** The states of _machine, precomputed. */
+    private StateCycle _cycle;
+
+    /** The reflector B as a Permutation. */
+    private Permutation _perm;
+
+    /** Rotor I from the configuration. */
+    private Rotor _rotor;
+
+    /** Character indices converted by the per-character benchmarks. */
+    private int[] _letters;
+
+    /** A message of MESSAGE_SIZE letters, in groups of five. */
+    private String _message;
+
+    /** Set up a naval machine read from the default configuration. */
+    @Setup
+    public void setUp() {
+        _machine = Configs.navalMachine();
+        _rotor = _machine.spec().rotor(2);
+        _perm = _machine.spec().rotor(0).permutation();
+        _letters = new int[BATCH];
+        for (int i = 0; i < BATCH; i += 1) {
+            _letters[i] = (i * 7 + i / 26) % 26;
+        }
+        _message = Configs.message(MESSAGE_SIZE);
+        _cycle = new StateCycle(_machine, CYCLE_BUDGET);
+    }
+
+    /** Return the sum of permuting BATCH characters. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(BATCH)
+    public int permute() {
+        int sum = 0;
+        for (int c : _letters) {
+            sum += _perm.permute(c);
+        }
+        return sum;
+    }
+
+    /** Return the sum of passing BATCH characters forward through a rotor
+     *  at varying settings. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(BATCH)
+    public int rotorForward() {
+        int sum = 0;
+        for (int i = 0; i < BATCH; i += 1) {
+            sum += _rotor.convertForward(_letters[i], i % 26);
+        }
+        return sum;
+    }
+
+    /** Return the sum of converting BATCH characters with the machine. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(BATCH)
+    public int machineLetter() {
+        int sum = 0;
+        for (int c : _letters) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Return the conversion of a MESSAGE_SIZE-letter message. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String machineMessage() {
+        return _machine.convert(_message);
+    }
+
+    /** Return the parallel conversion of a MESSAGE_SIZE-letter message. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String machineMessageParallel() {
+        return _machine.convertParallel(_message);
+    }
+
+    /** Return the sum of converting BATCH characters with the cached
+     *  machine of STATE. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(BATCH)
+    public int machineLetterCached(Cached state) {
+        int sum = 0;
+        for (int c : _letters) {
+            sum += state._machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Return the conversion of a MESSAGE_SIZE-letter message with the
+     *  cached machine of STATE. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String machineMessageCached(Cached state) {
+        return state._machine.convert(_message);
+    }
+
+    /** Return the parallel conversion of a MESSAGE_SIZE-letter message with
+     *  the cached machine of STATE. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String machineMessageParallelCached(Cached state) {
+        return state._machine.convertParallel(_message);
+    }
+
+    /** Return the conversion of a MESSAGE_SIZE-letter message through the
+     *  precomputed states of the machine. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String stateCycleMessage() {
+        return _cycle.copy().convert(_message);
+    }
+
+}
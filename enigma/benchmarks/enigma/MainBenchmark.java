@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks for enigma.Main: reading a configuration file like
+ *  testing/correct/default.conf, in textual and binary form, and
+ *  converting a file of Configs.FILE_LINES message lines from end to
+ *  end, in both the buffered and memory-mapped modes.  The end-to-end
+ *  score in operations per second times the input size is bytes per
+ *  second.
+ *  @author Seongho Lee
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MainBenchmark {
+
+    /** Configuration file. */
+    private File _config;
+
+    /** The configuration file in binary form. */
+    private File _binaryConfig;
+
+    /** Input message file. */
+    private File _input;
+
+    /** Output file. */
+    private File _output;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _config = Configs.write("config", Configs.NAVAL_CONFIG);
+        _binaryConfig = File.createTempFile("config", ".bin");
+        _binaryConfig.deleteOnExit();
+        Main.main("-c", _config.getPath(), _binaryConfig.getPath());
+        _input = Configs.write("input", Configs.messageFile());
+        _output = File.createTempFile("output", ".out");
+        _output.deleteOnExit();
+    }
+
+    /** Remove the files. */
+    @TearDown
+    public void tearDown() {
+        _config.delete();
+        _binaryConfig.delete();
+        _input.delete();
+        _output.delete();
+    }
+
+    /** Return a machine read from the configuration file. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Machine readConfig() {
+        return Main.readConfig(_config.getPath());
+    }
+
+    /** Return a machine read from the binary configuration file. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Machine readBinaryConfig() {
+        return Main.readConfig(_binaryConfig.getPath());
+    }
+
+    /** Convert the input file with the buffered I/O path. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void endToEnd() {
+        Main.main(_config.getPath(), _input.getPath(), _output.getPath());
+    }
+
+    /** Convert the input file with the memory-mapped I/O path. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void endToEndMapped() {
+        Main.main("-m", _config.getPath(), _input.getPath(),
+                  _output.getPath());
+    }
+
+}
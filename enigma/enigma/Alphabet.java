@@ -1,14 +1,47 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so they may lie outside the Basic Multilingual Plane, and
+ *  both directions of the mapping are int tables whose size depends only
+ *  on the alphabet, so lookups cost the same for any alphabet.
  *  @author Seongho Lee
  */
 class Alphabet {
 
-    /** A new alphabet containing CHARS.  Character number #k has index
-     *  K (numbering from 0). No character may be duplicated. */
-    Alphabet(String chars) { _chars = chars; }
+    /** A new alphabet containing the characters of CHARS, which may
+     *  include surrogate pairs.  Character number #k has index K
+     *  (numbering from 0). No character may be duplicated. */
+    Alphabet(String chars) {
+        this(chars.codePoints().toArray());
+    }
+
+    /** A new alphabet whose character number #k is the code point
+     *  CODEPOINTS[K].  No character may be duplicated. */
+    Alphabet(int[] codePoints) {
+        _codePoints = codePoints.clone();
+        int lo = Character.MAX_CODE_POINT, hi = Character.MIN_CODE_POINT;
+        boolean bmp = true;
+        for (int ch : _codePoints) {
+            if (!Character.isValidCodePoint(ch)) {
+                throw error("invalid character %d in alphabet", ch);
+            }
+            lo = Math.min(lo, ch);
+            hi = Math.max(hi, ch);
+            bmp &= Character.isBmpCodePoint(ch);
+        }
+        _bmp = bmp;
+        if (_codePoints.length == 0 || hi - lo < DENSE_SPAN
+            || hi - lo < DENSE_FACTOR * _codePoints.length) {
+            buildDense(lo, hi);
+        } else {
+            buildSparse();
+        }
+    }
 
     /** A default alphabet of all upper-case characters. */
     Alphabet() {
@@ -17,37 +50,154 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _codePoints.length;
+    }
+
+    /** Returns true iff every character of this alphabet is a single
+     *  char (that is, in the Basic Multilingual Plane). */
+    boolean bmp() {
+        return _bmp;
     }
 
-    /** Returns true if CH is in this alphabet. */
-    boolean contains(char ch) { return _chars.contains(String.valueOf(ch)); }
+    /** Returns true if the character with code point CH is in this
+     *  alphabet. */
+    boolean contains(int ch) {
+        return index(ch) >= 0;
+    }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size(), which must be a single char. */
     char toChar(int index) {
+        int ch = toCodePoint(index);
+        if (!Character.isBmpCodePoint(ch)) {
+            throw error("character %d is not a single char", index);
+        }
+        return (char) ch;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
         if (index < size() && index >= 0) {
-            return _chars.charAt(index);
+            return _codePoints[index];
         }
         throw new EnigmaException("out of range");
     }
 
-    /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
-    int toInt(char ch) {
-        int result = -1;
-        for (int i = 0; i < size(); i++) {
-            if (_chars.charAt(i) == ch) {
-                result = i;
-            }
-        }
+    /** Returns the index of the character with code point CH, which must
+     *  be in the alphabet. This is the inverse of toCodePoint(). */
+    int toInt(int ch) {
+        int result = index(ch);
         if (result == -1) {
             throw new EnigmaException("Does not exit in alphabet");
         }
         return result;
     }
 
-    /** String _chars. */
-    private String _chars;
+    /** Returns the indices of the characters of S, all of which must be
+     *  in the alphabet. */
+    int[] toInts(String s) {
+        int[] result = s.codePoints().toArray();
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = toInt(result[i]);
+        }
+        return result;
+    }
+
+    /** Returns the characters of this alphabet, in order, as a
+     *  string. */
+    @Override
+    public String toString() {
+        return new String(_codePoints, 0, _codePoints.length);
+    }
+
+    /** Returns the index of code point CH, or -1 if it is not in this
+     *  alphabet. */
+    private int index(int ch) {
+        if (_dense != null) {
+            int k = ch - _lo;
+            if (k < 0 || k >= _dense.length) {
+                return -1;
+            }
+            return _dense[k];
+        }
+        int mask = _keys.length - 1;
+        for (int h = hash(ch) & mask; _values[h] >= 0; h = (h + 1) & mask) {
+            if (_keys[h] == ch) {
+                return _values[h];
+            }
+        }
+        return -1;
+    }
+
+    /** Fill in _dense as a direct table covering the code points
+     *  LO..HI. */
+    private void buildDense(int lo, int hi) {
+        _lo = lo;
+        _dense = new int[Math.max(0, hi - lo + 1)];
+        Arrays.fill(_dense, -1);
+        for (int i = 0; i < _codePoints.length; i += 1) {
+            int k = _codePoints[i] - lo;
+            if (_dense[k] >= 0) {
+                throw error("duplicate character '%c' in alphabet",
+                            _codePoints[i]);
+            }
+            _dense[k] = i;
+        }
+    }
+
+    /** Fill in _keys and _values as an open-addressed table holding the
+     *  characters of a sparse alphabet. */
+    private void buildSparse() {
+        int cap = Integer.highestOneBit(2 * _codePoints.length - 1) << 1;
+        _keys = new int[cap];
+        _values = new int[cap];
+        Arrays.fill(_values, -1);
+        for (int i = 0; i < _codePoints.length; i += 1) {
+            int ch = _codePoints[i];
+            int h;
+            for (h = hash(ch) & (cap - 1); _values[h] >= 0;
+                 h = (h + 1) & (cap - 1)) {
+                if (_keys[h] == ch) {
+                    throw error("duplicate character '%c' in alphabet", ch);
+                }
+            }
+            _keys[h] = ch;
+            _values[h] = i;
+        }
+    }
+
+    /** Returns a well-mixed hash of CH for probing _keys. */
+    private static int hash(int ch) {
+        int h = ch * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    /** Character spans up to this size always use a direct table. */
+    private static final int DENSE_SPAN = 1024;
+
+    /** Wider spans use a direct table only if at most this many entries
+     *  per character would be wasted. */
+    private static final int DENSE_FACTOR = 4;
+
+    /** _codePoints[K] is the code point of character number K. */
+    private final int[] _codePoints;
+
+    /** True iff all my characters are in the Basic Multilingual Plane. */
+    private final boolean _bmp;
+
+    /** Index of each code point C at _dense[C - _lo] (or -1), when the
+     *  alphabet is compact enough for a direct table. */
+    private int[] _dense;
+
+    /** Smallest code point covered by _dense. */
+    private int _lo;
+
+    /** Code points of a sparse alphabet, in open-addressed slots. */
+    private int[] _keys;
+
+    /** Index of the character in the same slot of _keys, or -1 for an
+     *  empty slot. */
+    private int[] _values;
 
 }
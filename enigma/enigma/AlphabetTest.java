@@ -0,0 +1,78 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Seongho Lee
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Check that ALPHA maps each character of CHARS to its index and
+     *  back, and does not contain any of the characters in ABSENT. */
+    private void checkAlphabet(Alphabet alpha, String chars, String absent) {
+        assertEquals("wrong size", chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            assertTrue(msg("contains", "missing '%c'", c), alpha.contains(c));
+            assertEquals(msg("toInt", "wrong index of '%c'", c),
+                         i, alpha.toInt(c));
+            assertEquals(msg("toChar", "wrong character at %d", i),
+                         c, alpha.toChar(i));
+        }
+        for (char c : absent.toCharArray()) {
+            assertFalse(msg("contains", "found '%c'", c), alpha.contains(c));
+        }
+    }
+
+    @Test
+    public void checkUpper() {
+        checkAlphabet(UPPER, UPPER_STRING, "az@[ 0");
+    }
+
+    @Test
+    public void checkSparse() {
+        String chars = "A\u0416z\u4e2d\uff21";
+        checkAlphabet(new Alphabet(chars), chars, "B\u0417\u4e2e\uff22");
+    }
+
+    @Test
+    public void checkCodePoints() {
+        String chars = "AB\ud835\udd38\ud835\udd39";
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(4, alpha.size());
+        assertFalse(alpha.bmp());
+        assertTrue(UPPER.bmp());
+        assertEquals(2, alpha.toInt(0x1d538));
+        assertEquals(0x1d539, alpha.toCodePoint(3));
+        assertEquals('B', alpha.toChar(1));
+        assertFalse(alpha.contains(0x1d53a));
+        assertArrayEquals(new int[] { 3, 0 },
+                          alpha.toInts("\ud835\udd39A"));
+        assertEquals(chars, alpha.toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNotChar() {
+        new Alphabet("A\ud835\udd38").toChar(1);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkMissing() {
+        UPPER.toInt('a');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Conversion of many independent messages, each with its own setting
+ *  line, by machines configured like a given one.  Setting lines are
+ *  compiled through a SettingsCache, so that later messages with a
+ *  recently used key need only set their rotors.  Messages are divided
+ *  among all processors, and may be submitted by several threads at
+ *  once.
+ *  @author Seongho Lee
+ */
+class Batch {
+
+    /** A message to be converted. */
+    static final class Request {
+
+        /** A request to convert MESSAGE after setting up the machine
+         *  according to the setting line SETTINGS. */
+        Request(String settings, String message) {
+            _settings = settings;
+            _message = message;
+        }
+
+        /** Return my setting line. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return my message. */
+        String message() {
+            return _message;
+        }
+
+        /** Setting line. */
+        private final String _settings;
+
+        /** Message. */
+        private final String _message;
+    }
+
+    /** Batches for machines configured like CONFIG, as returned by
+     *  Main.readConfig, caching up to DEFAULT_CACHE_SIZE setting
+     *  lines. */
+    Batch(Machine config) {
+        this(config, DEFAULT_CACHE_SIZE);
+    }
+
+    /** Batches for machines configured like CONFIG, caching up to
+     *  CACHESIZE setting lines. */
+    Batch(Machine config, int cacheSize) {
+        _settings = new SettingsCache(config, cacheSize);
+    }
+
+    /** Return the conversions of the messages of REQUESTS, in the same
+     *  order, each converted from its own settings.  Blanks in messages
+     *  are ignored. */
+    List<String> convert(List<Request> requests) {
+        String[] results = new String[requests.size()];
+        int chunk = Math.max(MIN_CHUNK, requests.size()
+                             / (CHUNKS_PER_THREAD
+                                * ForkJoinPool.getCommonPoolParallelism()));
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < results.length; start += chunk) {
+            final int lo = start, hi = Math.min(results.length, lo + chunk);
+            tasks.add(() -> {
+                for (int i = lo; i < hi; i += 1) {
+                    results[i] = convert(requests.get(i), i);
+                }
+                return null;
+            });
+        }
+        for (Future<Void> done : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                done.get();
+            } catch (InterruptedException excp) {
+                throw error("batch interrupted");
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof EnigmaException) {
+                    throw (EnigmaException) excp.getCause();
+                }
+                throw error("batch failed: %s", excp.getCause());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /** Return the conversion of the message of REQUEST, which is number
+     *  INDEX in its batch. */
+    private String convert(Request request, int index) {
+        try {
+            return _settings.get(request.settings()).newMachine()
+                .convert(request.message());
+        } catch (EnigmaException excp) {
+            throw error("request %d: %s", index, excp.getMessage());
+        }
+    }
+
+    /** Return the number of distinct MachineSpecs cached. */
+    int cachedSpecs() {
+        return _settings.specs();
+    }
+
+    /** Smallest number of requests handled by one task. */
+    private static final int MIN_CHUNK = 16;
+
+    /** Number of tasks per thread of the common pool for large
+     *  batches. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Default number of setting lines cached. */
+    static final int DEFAULT_CACHE_SIZE = 4096;
+
+    /** Compiled setting lines. */
+    private final SettingsCache _settings;
+}
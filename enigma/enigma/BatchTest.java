@@ -0,0 +1,139 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch, Settings, and
+ *  SettingsCache classes.
+ *  @author Seongho Lee
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Setting lines used by the tests. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AAAA (AQ) (EP)",
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C Gamma VI VII VIII ZZZZ ABCD",
+        "*   B Beta I II III  AXLE (AQ)  (EP) ",
+    };
+
+    /** Return a naval machine with no rotors inserted. */
+    private static Machine config() {
+        return new Machine(UPPER, 5, 3, navalRotors());
+    }
+
+    @Test
+    public void checkSettings() {
+        Settings settings = new Settings(SETTINGS[2], 5);
+        assertArrayEquals(new String[] { "C", "Gamma", "VI", "VII", "VIII" },
+                          settings.rotors());
+        assertEquals("ZZZZ", settings.positions());
+        assertEquals("ABCD", settings.rings());
+        assertEquals("", settings.plugboard());
+        Settings other = new Settings("* C Gamma VI VII VIII AAAA ABCD", 5);
+        assertEquals(settings.specKey(), other.specKey());
+        assertNull(new Settings(SETTINGS[0], 5).rings());
+        assertEquals("(AQ)(EP)", new Settings(SETTINGS[0], 5).plugboard());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkShortSettings() {
+        new Settings("* B Beta I II", 5);
+    }
+
+    @Test
+    public void checkSettingsCache() {
+        assertEquals("* B Beta I II III AXLE (AQ) (EP)",
+                     SettingsCache.normalize(SETTINGS[3]));
+        SettingsCache cache = new SettingsCache(config(), 2);
+        SettingsCache.Compiled first = cache.get(SETTINGS[0]);
+        assertSame(first, cache.get(" " + SETTINGS[0] + "\t"));
+        SettingsCache.Compiled shared = cache.get(SETTINGS[3]);
+        assertSame(first.spec(), shared.spec());
+        assertEquals(1, cache.specs());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals("IHBDQQMTQZ", first.newMachine().convert("HELLOWORLD"));
+        Machine machine = config();
+        shared.apply(machine);
+        Machine expected = config();
+        new Settings(SETTINGS[3], 5).apply(expected);
+        assertEquals(expected.convert("HELLOWORLD"),
+                     machine.convert("HELLOWORLD"));
+
+        cache.get(SETTINGS[1]);
+        cache.get(SETTINGS[2]);
+        assertEquals(2, cache.lines());
+        assertEquals(2, cache.specs());
+        assertNotSame(first, cache.get(SETTINGS[0]));
+    }
+
+    @Test
+    public void checkWarm() {
+        SettingsCache old = new SettingsCache(config(), 10);
+        for (int i = 0; i < 3; i += 1) {
+            old.get(SETTINGS[i]);
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor rotor : navalRotors()) {
+            if (!rotor.name().equals("VII")) {
+                rotors.add(rotor);
+            }
+        }
+        SettingsCache cache =
+            new SettingsCache(new Machine(UPPER, 5, 3, rotors), 10);
+        cache.warm(old);
+        assertEquals(2, cache.lines());
+        assertEquals(2, cache.specs());
+        assertEquals(0, cache.misses());
+        cache.get(SETTINGS[1]);
+        assertEquals(1, cache.hits());
+        assertEquals(0, cache.misses());
+    }
+
+    @Test
+    public void checkConvert() {
+        ArrayList<Batch.Request> requests = new ArrayList<>();
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 1) {
+            String settings = SETTINGS[i % SETTINGS.length];
+            String message = "HELLO WORLD " + UPPER_STRING.substring(i % 26);
+            requests.add(new Batch.Request(settings, message));
+            Machine machine = config();
+            new Settings(settings, 5).apply(machine);
+            expected.add(machine.convert(message));
+        }
+        Batch batch = new Batch(config());
+        List<String> results = batch.convert(requests);
+        assertEquals(expected, results);
+        assertEquals(3, batch.cachedSpecs());
+        assertEquals("IHBDQQMTQZ", results.get(0).substring(0, 10));
+    }
+
+    @Test
+    public void checkErrors() {
+        ArrayList<Batch.Request> requests = new ArrayList<>();
+        for (int i = 0; i < 100; i += 1) {
+            requests.add(new Batch.Request(SETTINGS[0], "HELLO"));
+        }
+        requests.set(42, new Batch.Request("* B Beta I II IX AAAA", "HI"));
+        try {
+            new Batch(config()).convert(requests);
+            fail("no error for bad rotor");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("request 42:"));
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A compact binary form of a machine configuration, which can be loaded
+ *  without parsing any cycles.  A file consists of a header:
+ *  <pre>
+ *      8 bytes   MAGIC
+ *      4 bytes   format VERSION
+ *      8 bytes   length of the body in bytes
+ *      8 bytes   CRC-32 checksum of the body
+ *  </pre>
+ *  followed by the body:
+ *  <pre>
+ *      4 bytes   alphabet size N, then N 4-byte code points
+ *      4 bytes   number of rotor slots
+ *      4 bytes   number of pawls
+ *      4 bytes   number of rotors, then for each rotor:
+ *          4 bytes   type ('M', 'N', or 'R')
+ *          4 bytes   length of the name, then its 2-byte characters
+ *          4 bytes   number of notches, then their 4-byte indices
+ *          N 4-byte  indices: the rotor's permutation as a table
+ *  </pre>
+ *  All numbers are big-endian.  Files are read through a memory map, and
+ *  the permutation tables are copied from it in bulk.
+ *  @author Seongho Lee
+ */
+final class BinaryConfig {
+
+    /** Not instantiable. */
+    private BinaryConfig() {
+    }
+
+    /** Write the alphabet, numbers of slots and pawls, and all available
+     *  rotors of CONFIG, as returned by Main.readConfig, to the file
+     *  FILE, replacing any previous contents. */
+    static void write(Machine config, Path file) {
+        Alphabet alpha = config.alphabet();
+        int n = alpha.size();
+        int size = Integer.BYTES * (4 + n);
+        for (Rotor rotor : config.allRotors()) {
+            size += Integer.BYTES * (3 + notches(rotor).length + n)
+                + Character.BYTES * rotor.name().length();
+        }
+        ByteBuffer body = ByteBuffer.allocate(size);
+        body.putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            body.putInt(alpha.toCodePoint(i));
+        }
+        body.putInt(config.numRotors());
+        body.putInt(config.numPawls());
+        body.putInt(config.allRotors().size());
+        for (Rotor rotor : config.allRotors()) {
+            body.putInt(rotor.rotates() ? 'M'
+                        : rotor.reflecting() ? 'R' : 'N');
+            body.putInt(rotor.name().length());
+            for (int i = 0; i < rotor.name().length(); i += 1) {
+                body.putChar(rotor.name().charAt(i));
+            }
+            int[] notches = notches(rotor);
+            body.putInt(notches.length);
+            for (int notch : notches) {
+                body.putInt(notch);
+            }
+            for (int i = 0; i < n; i += 1) {
+                body.putInt(rotor.permutation().permute(i));
+            }
+        }
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putInt(VERSION).putLong(size)
+            .putLong(crc.getValue());
+        header.flip();
+        try (FileChannel out = FileChannel.open(
+                 file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(new ByteBuffer[] { header, body });
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the notches of ROTOR, as indices, in increasing order. */
+    private static int[] notches(Rotor rotor) {
+        int count = 0;
+        for (int s = 0; s < rotor.size(); s += 1) {
+            if (rotor.atNotch(s)) {
+                count += 1;
+            }
+        }
+        int[] result = new int[count];
+        count = 0;
+        for (int s = 0; s < rotor.size(); s += 1) {
+            if (rotor.atNotch(s)) {
+                result[count] = s;
+                count += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff FILE starts with the header of a binary
+     *  configuration in the current VERSION whose body fills the rest of
+     *  the file.  Any other file, including a textual configuration whose
+     *  alphabet happens to start with the letters of MAGIC, is taken to be
+     *  text. */
+    static boolean isBinary(Path file) {
+        try (FileChannel in = FileChannel.open(file,
+                                               StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                continue;
+            }
+            if (header.hasRemaining()) {
+                return false;
+            }
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            return ByteBuffer.wrap(magic).equals(ByteBuffer.wrap(MAGIC))
+                && header.getInt() == VERSION
+                && header.getLong() == in.size() - HEADER_SIZE;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return a machine with the alphabet, numbers of slots and pawls,
+     *  and all the rotors described by the binary configuration in
+     *  FILE. */
+    static Machine read(Path file) {
+        try (FileChannel in = FileChannel.open(file,
+                                               StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE) {
+                throw error("%s: truncated binary configuration", file);
+            }
+            MappedByteBuffer map =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            byte[] magic = new byte[MAGIC.length];
+            map.get(magic);
+            if (!ByteBuffer.wrap(magic).equals(ByteBuffer.wrap(MAGIC))) {
+                throw error("%s: not a binary configuration", file);
+            }
+            int version = map.getInt();
+            if (version != VERSION) {
+                throw error("%s: unsupported binary configuration "
+                            + "version %d", file, version);
+            }
+            long size = map.getLong(), checksum = map.getLong();
+            if (size != in.size() - HEADER_SIZE) {
+                throw error("%s: truncated binary configuration", file);
+            }
+            ByteBuffer body = map.slice();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != checksum) {
+                throw error("%s: binary configuration checksum mismatch",
+                            file);
+            }
+            return read(body);
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the machine described by the checked body BODY of a binary
+     *  configuration. */
+    private static Machine read(ByteBuffer body) {
+        try {
+            int[] chars = new int[count(body, Integer.BYTES)];
+            body.asIntBuffer().get(chars);
+            body.position(body.position() + Integer.BYTES * chars.length);
+            Alphabet alpha = new Alphabet(chars);
+            int n = alpha.size();
+            int numRotors = body.getInt(), pawls = body.getInt();
+            if (numRotors < 2 || pawls < 0 || pawls >= numRotors) {
+                throw error("malformed binary configuration: need at "
+                            + "least two slots and fewer pawls than slots");
+            }
+            int count = count(body, Integer.BYTES * (3 + n));
+            ArrayList<Rotor> rotors = new ArrayList<>(count);
+            int[] table = new int[n];
+            for (int r = 0; r < count; r += 1) {
+                int type = body.getInt();
+                char[] name = new char[count(body, Character.BYTES)];
+                body.asCharBuffer().get(name);
+                body.position(body.position()
+                              + Character.BYTES * name.length);
+                StringBuilder notches = new StringBuilder();
+                for (int i = count(body, Integer.BYTES); i > 0; i -= 1) {
+                    notches.appendCodePoint(alpha.toCodePoint(body.getInt()));
+                }
+                body.asIntBuffer().get(table);
+                body.position(body.position() + Integer.BYTES * n);
+                Permutation perm = new Permutation(alpha, table);
+                switch (type) {
+                case 'M':
+                    rotors.add(new MovingRotor(new String(name), perm,
+                                               notches.toString()));
+                    break;
+                case 'N':
+                    rotors.add(new FixedRotor(new String(name), perm));
+                    break;
+                case 'R':
+                    rotors.add(new Reflector(new String(name), perm));
+                    break;
+                default:
+                    throw error("bad rotor type in binary configuration");
+                }
+            }
+            return new Machine(alpha, numRotors, pawls,
+                               new Catalogue(rotors));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException excp) {
+            throw error("malformed binary configuration");
+        }
+    }
+
+    /** Read a count from BODY and return it, checking that BODY holds at
+     *  least that many items of WIDTH bytes each after it. */
+    private static int count(ByteBuffer body, int width) {
+        int result = body.getInt();
+        if (result < 0 || result > body.remaining() / width) {
+            throw error("malformed binary configuration");
+        }
+        return result;
+    }
+
+    /** Bytes identifying a binary configuration. */
+    private static final byte[] MAGIC = {
+        'E', 'N', 'I', 'G', 'M', 'A', 'C', 'F'
+    };
+
+    /** Current format version. */
+    static final int VERSION = 1;
+
+    /** Size of the header in bytes. */
+    private static final int HEADER_SIZE = MAGIC.length + 4 + 8 + 8;
+}
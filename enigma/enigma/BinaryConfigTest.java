@@ -0,0 +1,163 @@
+package enigma;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the BinaryConfig class.
+ *  @author Seongho Lee
+ */
+public class BinaryConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A small configuration. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " VI MZM    (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Return a new temporary file, deleted on exit. */
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("config", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** Return the result of converting a long message with CONFIG set up
+     *  with rotors ROTORS. */
+    private static String convert(Machine config, String[] rotors) {
+        config.insertRotors(rotors);
+        config.setRotors("AXLE");
+        config.setPlugboard(new Permutation("(AQ) (EP)", config.alphabet()));
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            msg.append((char) ('A' + i * 7 % 26));
+        }
+        return config.convert(msg.toString());
+    }
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        File file = tempFile();
+        Machine text =
+            new ConfigReader(new StringReader(CONFIG), "test").read();
+        BinaryConfig.write(text, file.toPath());
+        assertTrue(BinaryConfig.isBinary(file.toPath()));
+        Machine binary = BinaryConfig.read(file.toPath());
+        assertEquals(5, binary.numRotors());
+        assertEquals(3, binary.numPawls());
+        assertEquals(6, binary.allRotors().size());
+        String[] rotors = { "B", "Beta", "VI", "II", "III" };
+        assertEquals(convert(text, rotors), convert(binary, rotors));
+    }
+
+    @Test
+    public void checkCorrupt() throws IOException {
+        File file = tempFile();
+        BinaryConfig.write(
+            new ConfigReader(new StringReader(CONFIG), "test").read(),
+            file.toPath());
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(raw.length() - 10);
+            int b = raw.read();
+            raw.seek(raw.length() - 10);
+            raw.write(b ^ 1);
+        }
+        try {
+            BinaryConfig.read(file.toPath());
+            fail("corrupt configuration accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("checksum"));
+        }
+    }
+
+    /** Write to FILE a binary configuration header for BODY, with a
+     *  correct size and checksum, followed by BODY. */
+    private static void writeRaw(File file, byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        try (DataOutputStream out =
+             new DataOutputStream(new FileOutputStream(file))) {
+            out.writeBytes("ENIGMACF");
+            out.writeInt(BinaryConfig.VERSION);
+            out.writeLong(body.length);
+            out.writeLong(crc.getValue());
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void checkMalformed() throws IOException {
+        File file = tempFile();
+        int[][] bodies = {
+            { -1 },
+            { Integer.MAX_VALUE, 'A' },
+            { 2, 'A', 'B', 1, 1, 1000 },
+            { 2, 'A', 'B' },
+            { 2, 'A', 'B', 1, 0, 0 },
+            { 2, 'A', 'B', 3, -1, 0 },
+            { 2, 'A', 'B', 3, 3, 0 },
+        };
+        for (int[] ints : bodies) {
+            ByteBuffer body = ByteBuffer.allocate(Integer.BYTES * ints.length);
+            body.asIntBuffer().put(ints);
+            writeRaw(file, body.array());
+            assertTrue(BinaryConfig.isBinary(file.toPath()));
+            try {
+                BinaryConfig.read(file.toPath());
+                fail("malformed configuration accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("malformed"));
+            }
+        }
+    }
+
+    @Test
+    public void checkMagicAlphabet() throws IOException {
+        File file = tempFile();
+        String config = CONFIG.replace("ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+                                       "ENIGMACFBDHJKLOPQRSTUVWXYZ");
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.writeBytes(config);
+        }
+        assertFalse(BinaryConfig.isBinary(file.toPath()));
+        Machine text =
+            new ConfigReader(new StringReader(config), "test").read();
+        assertEquals(6, text.allRotors().size());
+    }
+
+    @Test
+    public void checkNotBinary() throws IOException {
+        File file = tempFile();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.writeBytes(CONFIG);
+        }
+        assertFalse(BinaryConfig.isBinary(file.toPath()));
+        try {
+            BinaryConfig.read(file.toPath());
+            fail("text configuration accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("not a binary"));
+        }
+    }
+
+}
@@ -0,0 +1,475 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A Turing-Welchman bombe: a search for the rotor order, initial rotor
+ *  settings and plugboard of an Enigma machine from a crib at a known
+ *  position in a ciphertext.
+ *
+ *  <p>The crib and the ciphertext beneath it form a menu: a graph whose
+ *  vertices are letters, with an edge between the Ith crib letter and the
+ *  Ith ciphertext letter labeled by the substitution the unplugged machine
+ *  performs at that step.  If the plugboard takes letter A to X, an edge
+ *  from A to C labeled S requires it to take C to S(X).  At each rotor
+ *  order and setting (each "stop"), the bombe assumes that the most
+ *  connected menu letter, the test register, is plugged to some letter
+ *  and follows these implications, together with the symmetry of the
+ *  plugboard (the diagonal board), to their closure.  A closure that
+ *  plugs some letter to two others is a contradiction.  Since the
+ *  implications are symmetric, every hypothesis reached on the way to a
+ *  contradiction leads to it too, so each one rules out several
+ *  hypotheses for the test register at once.  Stops at which some
+ *  hypothesis is consistent survive and are reported, together with the
+ *  plugboard pairs it implies.
+ *
+ *  <p>Hypotheses are kept as a bit matrix, one row of bits per letter, and
+ *  the work is divided among all processors.
+ *  @author Seongho Lee
+ */
+class Bombe {
+
+    /** A setting that survived the bombe. */
+    static final class Stop {
+
+        /** A stop with rotors ROTORS (reflector first), initial SETTING,
+         *  and plugboard cycles PLUGBOARD. */
+        Stop(String[] rotors, String setting, String plugboard) {
+            _rotors = rotors.clone();
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my initial rotor settings. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs deduced at this stop, as cycles.
+         *  Letters not on the menu are unplugged. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return my setting line, as accepted by Main. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of the rotors. */
+        private final String[] _rotors;
+
+        /** Initial settings. */
+        private final String _setting;
+
+        /** Deduced plugboard cycles. */
+        private final String _plugboard;
+    }
+
+    /** A bombe for machines configured like CONFIG, as returned by
+     *  Main.readConfig, testing whether CIPHERTEXT deciphers to CRIB
+     *  starting at POSITION.  Blanks in CIPHERTEXT and CRIB are
+     *  ignored. */
+    Bombe(Machine config, String ciphertext, String crib, int position) {
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _pawls = config.numPawls();
+        _catalogue = config.allRotors();
+        _position = position;
+        int n = _alphabet.size();
+        int[] plain = toIndices(crib), cipher = toIndices(ciphertext);
+        if (plain.length == 0 || position < 0
+            || position + plain.length > cipher.length) {
+            throw error("crib must be non-empty and fit in the message");
+        }
+        int[] degree = new int[n];
+        for (int i = 0; i < plain.length; i += 1) {
+            if (plain[i] == cipher[position + i]) {
+                throw error("crib cannot appear at position %d", position);
+            }
+            degree[plain[i]] += 1;
+            degree[cipher[position + i]] += 1;
+        }
+        _menuLength = plain.length;
+        int test = 0;
+        _edgeLetter = new int[n][];
+        _edgeStep = new int[n][];
+        for (int a = 0; a < n; a += 1) {
+            _edgeLetter[a] = new int[degree[a]];
+            _edgeStep[a] = new int[degree[a]];
+            if (degree[a] > degree[test]) {
+                test = a;
+            }
+        }
+        _test = test;
+        Arrays.fill(degree, 0);
+        for (int i = 0; i < plain.length; i += 1) {
+            addEdge(plain[i], cipher[position + i], i, degree);
+            addEdge(cipher[position + i], plain[i], i, degree);
+        }
+    }
+
+    /** Add an edge labeled with step STEP from letter A to letter C,
+     *  where DEGREE[A] edges from A have been added so far. */
+    private void addEdge(int a, int c, int step, int[] degree) {
+        _edgeLetter[a][degree[a]] = c;
+        _edgeStep[a][degree[a]] = step;
+        degree[a] += 1;
+    }
+
+    /** Return the number of stops tested so far by run. */
+    long stopsTested() {
+        return _tested.get();
+    }
+
+    /** Test every rotor order at every setting, and return the stops that
+     *  survive, in no particular order.  If PROGRESS is not null, report
+     *  the number of stops tested and the rate on it at the end. */
+    List<Stop> run(PrintStream progress) {
+        List<Stop> found = Collections.synchronizedList(new ArrayList<Stop>());
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (String[] order
+                 : KeySearch.rotorOrders(_catalogue, _numRotors, _pawls)) {
+            Machine machine = new Machine(_alphabet, _numRotors, _pawls,
+                                          _catalogue);
+            machine.insertRotors(order);
+            MachineSpec spec = machine.spec();
+            for (int first = 0; first < _alphabet.size(); first += 1) {
+                final int leftmost = first;
+                tasks.add(() -> {
+                    runFrom(spec, order, leftmost, found);
+                    return null;
+                });
+            }
+        }
+        _tested.set(0);
+        long start = System.nanoTime();
+        try {
+            for (Future<Void> done : ForkJoinPool.commonPool()
+                     .invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("bombe run failed: %s", excp);
+        }
+        if (progress != null) {
+            double seconds =
+                Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+            progress.printf("%d stops tested, %.0f stops/sec, %d survived%n",
+                            _tested.get(), _tested.get() / seconds,
+                            found.size());
+        }
+        return new ArrayList<>(found);
+    }
+
+    /** Test every stop of SPEC, whose rotors are named ORDER, at which the
+     *  leftmost non-reflector rotor has setting LEFTMOST, adding those
+     *  that survive to FOUND.  As on the bombe's drums, the settings are
+     *  swept with the rightmost rotor fastest, and whenever the next stop
+     *  is the current one advanced by one step, the substitutions for its
+     *  menu are those of the current stop shifted by one, so that only the
+     *  last one need be computed. */
+    private void runFrom(MachineSpec spec, String[] order, int leftmost,
+                         List<Stop> found) {
+        Machine machine = spec.newMachine(), probe = spec.newMachine();
+        int n = _alphabet.size();
+        int[][] scramblers = new int[_menuLength][n];
+        Closure closure = new Closure(n);
+        int[] posns = new int[_numRotors];
+        posns[1] = leftmost;
+        boolean shifted = false;
+        long tested = 0;
+        while (true) {
+            if (shifted) {
+                int[] oldest = scramblers[0];
+                System.arraycopy(scramblers, 1, scramblers, 0,
+                                 _menuLength - 1);
+                scramblers[_menuLength - 1] = oldest;
+                machine.seek(1);
+                machine.substitution(oldest);
+            } else {
+                machine.setRotors(posns);
+                machine.seek(_position);
+                for (int i = 0; i < _menuLength; i += 1) {
+                    machine.seek(1);
+                    machine.substitution(scramblers[i]);
+                }
+            }
+            testStop(closure, scramblers, order, posns, found);
+            tested += 1;
+            probe.setRotors(posns);
+            probe.seek(1);
+            int k;
+            for (k = _numRotors - 1; k > 1; k -= 1) {
+                posns[k] += 1;
+                if (posns[k] < n) {
+                    break;
+                }
+                posns[k] = 0;
+            }
+            if (k == 1) {
+                break;
+            }
+            shifted = true;
+            for (k = 1; k < _numRotors && shifted; k += 1) {
+                shifted = probe.setting(k) == posns[k];
+            }
+        }
+        _tested.addAndGet(tested);
+    }
+
+    /** Test every hypothesis for the test register at the stop with
+     *  rotors ORDER at settings POSNS, whose unplugged substitutions at
+     *  the steps of the menu are SCRAMBLERS, using CLOSURE, adding each
+     *  consistent one to FOUND. */
+    private void testStop(Closure closure, int[][] scramblers,
+                          String[] order, int[] posns, List<Stop> found) {
+        int n = _alphabet.size();
+        long[] tried = closure._tried;
+        Arrays.fill(tried, 0);
+        for (int x = 0; x < n; x += 1) {
+            if ((tried[x >>> 6] & (1L << x)) != 0) {
+                continue;
+            }
+            boolean consistent = closure.close(_test, x, scramblers);
+            int base = _test * closure._words;
+            for (int w = 0; w < closure._words; w += 1) {
+                tried[w] |= closure._bits[base + w];
+            }
+            if (consistent) {
+                found.add(new Stop(order, settingString(posns),
+                                   closure.plugboard()));
+            } else if (closure._count[_test] == n) {
+                return;
+            }
+        }
+    }
+
+    /** The closure of a plugboard hypothesis at one stop, with the
+     *  scratch space needed to compute it without allocation. */
+    private final class Closure {
+
+        /** Scratch space for an alphabet of N letters. */
+        Closure(int n) {
+            _n = n;
+            _words = (n + 63) >>> 6;
+            _bits = new long[n * _words];
+            _tried = new long[_words];
+            _count = new int[n];
+            _queue = new int[n * n];
+        }
+
+        /** Compute the closure of the hypothesis that the plugboard takes
+         *  letter A to letter X, given the unplugged substitutions
+         *  SCRAMBLERS at each step of the menu, stopping at the first
+         *  contradiction.  Return true iff it plugs no letter to two
+         *  others.  The implications are followed breadth first, so that
+         *  contradictions are usually found after a few of them. */
+        boolean close(int a, int x, int[][] scramblers) {
+            for (int i = 0; i < _size; i += 1) {
+                int p = _queue[i];
+                _bits[(p / _n) * _words + ((p % _n) >>> 6)] = 0;
+                _count[p / _n] = 0;
+            }
+            _size = 0;
+            _consistent = true;
+            assume(a, x);
+            for (int next = 0; next < _size && _consistent; next += 1) {
+                int p = _queue[next];
+                int from = p / _n, to = p % _n;
+                int[] letters = _edgeLetter[from], steps = _edgeStep[from];
+                for (int e = 0; e < letters.length; e += 1) {
+                    assume(letters[e], scramblers[steps[e]][to]);
+                }
+            }
+            return _consistent;
+        }
+
+        /** Record the hypotheses that A is plugged to B and B to A, and
+         *  queue any that are new for propagation. */
+        private void assume(int a, int b) {
+            set(a, b);
+            if (a != b) {
+                set(b, a);
+            }
+        }
+
+        /** Record the hypothesis that A is plugged to B, queuing it for
+         *  propagation if it is new. */
+        private void set(int a, int b) {
+            int w = a * _words + (b >>> 6);
+            long bit = 1L << b;
+            if ((_bits[w] & bit) == 0) {
+                _bits[w] |= bit;
+                _count[a] += 1;
+                if (_count[a] > 1) {
+                    _consistent = false;
+                }
+                _queue[_size] = a * _n + b;
+                _size += 1;
+            }
+        }
+
+        /** Return the plugboard pairs of the last consistent closure, as
+         *  cycles. */
+        String plugboard() {
+            StringBuilder result = new StringBuilder();
+            for (int a = 0; a < _n; a += 1) {
+                for (int w = 0; w < _words; w += 1) {
+                    long bits = _bits[a * _words + w];
+                    while (bits != 0) {
+                        int b = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        if (a < b) {
+                            if (result.length() > 0) {
+                                result.append(' ');
+                            }
+                            result.append('(').append(_alphabet.toChar(a))
+                                .append(_alphabet.toChar(b)).append(')');
+                        }
+                    }
+                }
+            }
+            return result.toString();
+        }
+
+        /** Size of the alphabet. */
+        private final int _n;
+
+        /** Number of words in a row of _bits. */
+        private final int _words;
+
+        /** Row A of this bit matrix, _words long, has bit B set iff the
+         *  closure plugs A to B. */
+        private final long[] _bits;
+
+        /** Bit X is set iff the test register hypothesis X has been
+         *  tested or reached at the current stop. */
+        private final long[] _tried;
+
+        /** _count[A] is the number of bits set in row A of _bits. */
+        private final int[] _count;
+
+        /** The hypotheses A * _n + B of the closure, in the order they
+         *  were reached. */
+        private final int[] _queue;
+
+        /** Number of entries in _queue. */
+        private int _size;
+
+        /** True iff no letter has been plugged to two others. */
+        private boolean _consistent;
+    }
+
+    /** Return the setting string for rotor settings POSNS. */
+    private String settingString(int[] posns) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < _numRotors; i += 1) {
+            result.append(_alphabet.toChar(posns[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return the alphabet indices of the non-blank characters of S. */
+    private int[] toIndices(String s) {
+        int[] result = new int[s.length()];
+        int n = 0;
+        for (int i = 0; i < s.length(); i += 1) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                result[n] = _alphabet.toInt(s.charAt(i));
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Run the bombe on the ciphertext in ARGS[3] (or the standard input,
+     *  if absent), using the rotors in configuration file ARGS[0], with
+     *  the crib ARGS[1] at position ARGS[2].  Prints each surviving stop
+     *  as a setting line, and a summary on the standard error. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: java enigma.Bombe CONFIG CRIB POSITION "
+                            + "[CIPHERTEXT FILE]");
+            }
+            int position;
+            try {
+                position = Integer.parseInt(args[2]);
+            } catch (NumberFormatException excp) {
+                throw error("bad crib position: %s", args[2]);
+            }
+            Machine config = Main.readConfig(args[0]);
+            String ciphertext;
+            if (args.length > 3) {
+                ciphertext = new String(Files.readAllBytes(
+                                            new File(args[3]).toPath()));
+            } else {
+                ciphertext = new String(System.in.readAllBytes());
+            }
+            Bombe bombe = new Bombe(config, ciphertext, args[1], position);
+            for (Stop stop : bombe.run(System.err)) {
+                System.out.println(stop);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The available rotors. */
+    private final Collection<Rotor> _catalogue;
+
+    /** Position of the crib in the ciphertext. */
+    private final int _position;
+
+    /** Number of letters in the crib. */
+    private final int _menuLength;
+
+    /** The test register: the letter with the most menu edges. */
+    private final int _test;
+
+    /** _edgeLetter[A][E] is the letter at the other end of the Eth menu
+     *  edge from letter A. */
+    private final int[][] _edgeLetter;
+
+    /** _edgeStep[A][E] is the step of the crib labeling the Eth menu edge
+     *  from letter A. */
+    private final int[][] _edgeStep;
+
+    /** Number of stops tested so far. */
+    private final AtomicLong _tested = new AtomicLong();
+}
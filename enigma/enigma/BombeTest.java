@@ -0,0 +1,68 @@
+package enigma;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Seongho Lee
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "WETTERVORHERSAGEBISKAYAKEINEBESONDERENVORKOMMNISSE";
+
+    /** Crib in the test message. */
+    private static final String CRIB = "KEINEBESONDERENVORKOMMNISSE";
+
+    /** Plugboard of the test message. */
+    private static final String PLUGBOARD = "(KX) (EY) (NR) (SM) (OQ)";
+
+    /** Return a 3-slot, 2-pawl machine with the naval rotors. */
+    private static Machine small() {
+        return new Machine(UPPER, 3, 2, navalRotors());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkSelfEncryption() {
+        new Bombe(small(), "ABCDE", "XBX", 0);
+    }
+
+    @Test
+    public void checkRun() {
+        Machine machine = small();
+        machine.insertRotors(new String[] { "B", "VII", "III" });
+        machine.setPlugboard(new Permutation(PLUGBOARD, UPPER));
+        machine.setRotors("MZ");
+        String cipher = machine.convert(PLAIN);
+        int position = PLAIN.indexOf(CRIB);
+        Bombe bombe = new Bombe(small(), cipher, CRIB, position);
+        List<Bombe.Stop> stops = bombe.run(null);
+        assertEquals(2 * 8 * 7 * 26 * 26, bombe.stopsTested());
+        assertTrue("too many stops", stops.size() < 100);
+        Permutation plugboard = new Permutation(PLUGBOARD, UPPER);
+        boolean seen = false;
+        for (Bombe.Stop stop : stops) {
+            if (!stop.toString().startsWith("* B VII III MZ")) {
+                continue;
+            }
+            seen = true;
+            Permutation deduced = new Permutation(stop.plugboard(), UPPER);
+            for (char c : CRIB.toCharArray()) {
+                assertEquals(plugboard.permute(c), deduced.permute(c));
+            }
+        }
+        assertTrue("true stop not found", seen);
+    }
+
+}
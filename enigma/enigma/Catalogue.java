@@ -0,0 +1,59 @@
+package enigma;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable collection of rotors with distinct names, indexed by name,
+ *  so that a rotor is found in constant time however many there are.
+ *  Rotors are iterated over in the order in which they were given.  A
+ *  Catalogue may be shared by any number of machines and threads.
+ *  @author Seongho Lee
+ */
+final class Catalogue extends AbstractCollection<Rotor> {
+
+    /** A catalogue of ROTORS, no two of which may have the same name. */
+    Catalogue(Collection<Rotor> rotors) {
+        _rotors = rotors.toArray(new Rotor[rotors.size()]);
+        _byName = new HashMap<>(2 * _rotors.length);
+        for (Rotor rotor : _rotors) {
+            if (_byName.putIfAbsent(rotor.name(), rotor) != null) {
+                throw error("duplicate rotor %s", rotor.name());
+            }
+        }
+    }
+
+    /** Return ROTORS as a Catalogue: ROTORS itself if it is one, and
+     *  otherwise a new Catalogue of its rotors. */
+    static Catalogue of(Collection<Rotor> rotors) {
+        if (rotors instanceof Catalogue) {
+            return (Catalogue) rotors;
+        }
+        return new Catalogue(rotors);
+    }
+
+    /** Return the rotor named NAME, or null if there is none. */
+    Rotor get(String name) {
+        return _byName.get(name);
+    }
+
+    @Override
+    public Iterator<Rotor> iterator() {
+        return Arrays.asList(_rotors).iterator();
+    }
+
+    @Override
+    public int size() {
+        return _rotors.length;
+    }
+
+    /** My rotors, in order. */
+    private final Rotor[] _rotors;
+
+    /** My rotors, by name. */
+    private final HashMap<String, Rotor> _byName;
+}
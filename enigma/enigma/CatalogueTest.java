@@ -0,0 +1,67 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Catalogue class.
+ *  @author Seongho Lee
+ */
+public class CatalogueTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkLookup() {
+        Catalogue catalogue = new Catalogue(navalRotors());
+        assertEquals(navalRotors().size(), catalogue.size());
+        Iterator<Rotor> rotors = catalogue.iterator();
+        for (Rotor expected : navalRotors()) {
+            Rotor rotor = rotors.next();
+            assertEquals(expected.name(), rotor.name());
+            assertSame(rotor, catalogue.get(rotor.name()));
+        }
+        assertNull(catalogue.get("IX"));
+        assertSame(catalogue, Catalogue.of(catalogue));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        ArrayList<Rotor> rotors = new ArrayList<>(navalRotors());
+        rotors.add(new FixedRotor("Beta", new Permutation("", UPPER)));
+        new Catalogue(rotors);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void checkImmutable() {
+        new Catalogue(navalRotors()).clear();
+    }
+
+    @Test
+    public void checkInsert() {
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+        String[] order = { "B", "Beta", "III", "IV", "I" };
+        for (int i = 0; i < 3; i += 1) {
+            machine.insertRotors(order);
+        }
+        assertEquals(5, machine.getRotors().size());
+        for (int i = 0; i < order.length; i += 1) {
+            assertEquals(order[i], machine.getRotors().get(i).name());
+        }
+        try {
+            machine.insertRotors(new String[] { "B", "Beta", "I", "I", "II" });
+            fail("rotor used twice");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+}
@@ -0,0 +1,593 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on an Enigma machine.  First, every legal
+ *  rotor order from a configuration's catalogue is tried at every initial
+ *  setting without a plugboard, and the settings whose decipherments have
+ *  the highest index of coincidence are kept.  Then, from each of these,
+ *  a number of independent restarts hill-climb the plugboard: pairs of
+ *  letters are plugged together whenever that improves the score of the
+ *  decipherment, first by index of coincidence and then by the log
+ *  probability of its n-grams under each of a series of n-gram tables.
+ *  Each restart then searches the ring settings of the fast and middle
+ *  rotors, one at a time, and climbs the plugboard again if a ring moved.
+ *  Both phases are divided among all processors.
+ *
+ *  <p>Turning a rotor's ring and its setting together leaves its wiring
+ *  where it was and changes only the letter at which it turns the rotor
+ *  to its left, so the first phase may assume rings at their first
+ *  position, and the ring of a rotor whose left neighbour does not move
+ *  cannot be told apart from its setting and is not searched.
+ *
+ *  <p>Each candidate setting's unplugged substitutions at every step of
+ *  the message are computed once, so that deciphering under a new
+ *  plugboard and scoring the result are a pass over arrays that allocates
+ *  nothing.
+ *  @author Seongho Lee
+ */
+class CiphertextAttack {
+
+    /** A key found by the attack. */
+    static final class Result implements Comparable<Result> {
+
+        /** A result with rotors ROTORS (reflector first), initial SETTING,
+         *  ring settings RINGS (empty if all are at their first position),
+         *  and plugboard cycles PLUGBOARD, which deciphers the message to
+         *  PLAINTEXT with the final score SCORE. */
+        Result(String[] rotors, String setting, String rings,
+               String plugboard, String plaintext, double score) {
+            _rotors = rotors.clone();
+            _setting = setting;
+            _rings = rings;
+            _plugboard = plugboard;
+            _plaintext = plaintext;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my initial rotor settings. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my ring settings, or the empty string if all of them are
+         *  at their first position. */
+        String rings() {
+            return _rings;
+        }
+
+        /** Return my plugboard, as cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the decipherment of the message under my key. */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** Return my score; higher is better. */
+        double score() {
+            return _score;
+        }
+
+        /** Better results come first. */
+        @Override
+        public int compareTo(Result other) {
+            return Double.compare(other._score, _score);
+        }
+
+        /** Return my setting line, as accepted by Main. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            if (!_rings.isEmpty()) {
+                line += " " + _rings;
+            }
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of the rotors. */
+        private final String[] _rotors;
+
+        /** Initial settings. */
+        private final String _setting;
+
+        /** Ring settings, or empty. */
+        private final String _rings;
+
+        /** Plugboard cycles. */
+        private final String _plugboard;
+
+        /** Decipherment. */
+        private final String _plaintext;
+
+        /** Final score. */
+        private final double _score;
+    }
+
+    /** An unplugged setting kept by the first phase. */
+    private static final class Candidate implements Comparable<Candidate> {
+
+        /** A candidate with rotors ORDER at settings POSNS whose unplugged
+         *  decipherment has index of coincidence IOC. */
+        Candidate(String[] order, int[] posns, double ioc) {
+            _order = order;
+            _posns = posns.clone();
+            _ioc = ioc;
+        }
+
+        /** Worse candidates come first. */
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(_ioc, other._ioc);
+        }
+
+        /** Rotor names. */
+        private final String[] _order;
+
+        /** Rotor settings. */
+        private final int[] _posns;
+
+        /** Index of coincidence. */
+        private final double _ioc;
+    }
+
+    /** An attack on CIPHERTEXT, enciphered by a machine configured like
+     *  CONFIG, as returned by Main.readConfig.  The plugboard is scored
+     *  by each of NGRAMS in turn, after the index of coincidence.  Blanks
+     *  in CIPHERTEXT are ignored. */
+    CiphertextAttack(Machine config, String ciphertext, Ngrams... ngrams) {
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _pawls = config.numPawls();
+        _catalogue = config.allRotors();
+        _ngrams = ngrams.clone();
+        int[] cipher = new int[ciphertext.length()];
+        int n = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            if (!Character.isWhitespace(ciphertext.charAt(i))) {
+                cipher[n] = _alphabet.toInt(ciphertext.charAt(i));
+                n += 1;
+            }
+        }
+        if (n < 2) {
+            throw error("message too short");
+        }
+        _ciphertext = Arrays.copyOf(cipher, n);
+    }
+
+    /** Run the attack, keeping the CANDIDATES best unplugged settings and
+     *  making RESTARTS hill climbs among them, numbered from 0.  Restart R
+     *  starts from candidate R mod CANDIDATES, with no plugboard for the
+     *  first climb from each and with plugboards chosen at random from
+     *  SEED + R for the others.  Return the best result of each restart,
+     *  best first.  If PROGRESS is not null, report the phases on it. */
+    List<Result> run(int candidates, int restarts, long seed,
+                     PrintStream progress) {
+        if (candidates <= 0 || restarts <= 0) {
+            throw error("need at least one candidate and one restart");
+        }
+        long start = System.nanoTime();
+        List<Candidate> best = rankSettings(candidates);
+        if (progress != null) {
+            progress.printf("%d settings kept after %.1f sec%n",
+                            best.size(), (System.nanoTime() - start) / 1e9);
+        }
+        ArrayList<Callable<Result>> tasks = new ArrayList<>();
+        for (int r = 0; r < restarts; r += 1) {
+            Candidate from = best.get(r % best.size());
+            Random random = r < best.size() ? null : new Random(seed + r);
+            tasks.add(() -> climb(from, random));
+        }
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> done : invokeAll(tasks)) {
+            try {
+                results.add(done.get());
+            } catch (InterruptedException | ExecutionException excp) {
+                throw error("attack failed: %s", excp);
+            }
+        }
+        Collections.sort(results);
+        if (progress != null) {
+            progress.printf("%d restarts done after %.1f sec%n", restarts,
+                            (System.nanoTime() - start) / 1e9);
+        }
+        return results;
+    }
+
+    /** Return the (up to) COUNT unplugged settings of all rotor orders
+     *  whose decipherments have the highest index of coincidence, best
+     *  first. */
+    private List<Candidate> rankSettings(int count) {
+        ArrayList<Callable<PriorityQueue<Candidate>>> tasks =
+            new ArrayList<>();
+        for (String[] order
+                 : KeySearch.rotorOrders(_catalogue, _numRotors, _pawls)) {
+            Machine machine = new Machine(_alphabet, _numRotors, _pawls,
+                                          _catalogue);
+            machine.insertRotors(order);
+            MachineSpec spec = machine.spec();
+            for (int first = 0; first < _alphabet.size(); first += 1) {
+                final int leftmost = first;
+                tasks.add(() -> rankFrom(spec, order, leftmost, count));
+            }
+        }
+        if (tasks.isEmpty()) {
+            throw error("no legal rotor orders");
+        }
+        PriorityQueue<Candidate> kept = new PriorityQueue<>();
+        for (Future<PriorityQueue<Candidate>> done : invokeAll(tasks)) {
+            try {
+                for (Candidate cand : done.get()) {
+                    keep(kept, cand, count);
+                }
+            } catch (InterruptedException | ExecutionException excp) {
+                throw error("attack failed: %s", excp);
+            }
+        }
+        ArrayList<Candidate> result = new ArrayList<>(kept);
+        Collections.sort(result, Collections.reverseOrder());
+        return result;
+    }
+
+    /** Return the (up to) COUNT best unplugged settings of SPEC, whose
+     *  rotors are named ORDER, at which the leftmost non-reflector rotor
+     *  has setting LEFTMOST. */
+    private PriorityQueue<Candidate> rankFrom(MachineSpec spec,
+                                              String[] order, int leftmost,
+                                              int count) {
+        Machine machine = spec.newMachine();
+        int n = _alphabet.size();
+        int[] plain = new int[_ciphertext.length];
+        int[] counts = new int[n];
+        int[] posns = new int[_numRotors];
+        posns[1] = leftmost;
+        PriorityQueue<Candidate> kept = new PriorityQueue<>();
+        while (true) {
+            machine.setRotors(posns);
+            for (int i = 0; i < plain.length; i += 1) {
+                plain[i] = machine.convert(_ciphertext[i]);
+            }
+            double ioc = Ngrams.indexOfCoincidence(plain, plain.length,
+                                                   counts);
+            if (kept.size() < count || ioc > kept.peek()._ioc) {
+                keep(kept, new Candidate(order, posns, ioc), count);
+            }
+            int k;
+            for (k = _numRotors - 1; k > 1; k -= 1) {
+                posns[k] += 1;
+                if (posns[k] < n) {
+                    break;
+                }
+                posns[k] = 0;
+            }
+            if (k == 1) {
+                break;
+            }
+        }
+        return kept;
+    }
+
+    /** Add CAND to KEPT, discarding the worst of KEPT if it then holds
+     *  more than COUNT candidates. */
+    private static void keep(PriorityQueue<Candidate> kept, Candidate cand,
+                             int count) {
+        kept.add(cand);
+        if (kept.size() > count) {
+            kept.poll();
+        }
+    }
+
+    /** Return the best result of hill-climbing the plugboard and then the
+     *  rings from FROM, starting with no plugboard if RANDOM is null, or
+     *  with one chosen using RANDOM otherwise. */
+    private Result climb(Candidate from, Random random) {
+        int n = _alphabet.size(), length = _ciphertext.length;
+        Machine machine = new Machine(_alphabet, _numRotors, _pawls,
+                                      _catalogue);
+        machine.insertRotors(from._order);
+        MachineSpec spec = machine.spec();
+        int[] rings = new int[_numRotors], posns = from._posns.clone();
+        int[][] scramblers = new int[length][n];
+        scramble(spec, rings, posns, scramblers);
+        Climber climber = new Climber(scramblers);
+        if (random != null) {
+            for (int i = 0; i < RANDOM_PAIRS; i += 1) {
+                climber.swap(random.nextInt(n), random.nextInt(n));
+            }
+        }
+        double score = climber.climbAll();
+        boolean moved = false;
+        for (int k = _numRotors - 1; k >= _numRotors - 2 && k > 1; k -= 1) {
+            if (spec.rotor(k).rotates() && spec.rotor(k - 1).rotates()) {
+                moved |= ringPass(climber, spec, k, rings, posns);
+            }
+        }
+        if (moved) {
+            score = climber.climbAll();
+        }
+        climber.decipher();
+        StringBuilder plaintext = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            plaintext.append(_alphabet.toChar(climber._plain[i]));
+        }
+        StringBuilder setting = new StringBuilder(),
+            ringSetting = new StringBuilder();
+        boolean ringed = false;
+        for (int i = 1; i < _numRotors; i += 1) {
+            setting.append(_alphabet.toChar(posns[i]));
+            ringSetting.append(_alphabet.toChar(rings[i]));
+            ringed |= rings[i] != 0;
+        }
+        return new Result(from._order, setting.toString(),
+                          ringed ? ringSetting.toString() : "",
+                          climber.plugboard(), plaintext.toString(), score);
+    }
+
+    /** Fill SCRAMBLERS[I] with the unplugged substitution performed by
+     *  SPEC, with ring settings RINGS and initial settings POSNS, on
+     *  letter I of the message. */
+    private void scramble(MachineSpec spec, int[] rings, int[] posns,
+                          int[][] scramblers) {
+        Machine machine = spec.withRings(rings).newMachine();
+        machine.setRotors(posns);
+        for (int[] scrambler : scramblers) {
+            machine.seek(1);
+            machine.substitution(scrambler);
+        }
+    }
+
+    /** Try every ring setting of the rotor in slot K of SPEC, turning its
+     *  setting in POSNS along with it, and keep in RINGS and POSNS the one
+     *  whose decipherment under the plugboard of CLIMBER scores best by
+     *  its last stage.  Leave CLIMBER's substitutions those of the kept
+     *  ring, and return true iff that is not the ring it started with. */
+    private boolean ringPass(Climber climber, MachineSpec spec, int k,
+                             int[] rings, int[] posns) {
+        int n = _alphabet.size(), stage = _ngrams.length;
+        int ring0 = rings[k], posn0 = posns[k];
+        int bestRing = ring0;
+        double best = climber.score(stage);
+        for (int r = 0; r < n; r += 1) {
+            if (r != ring0) {
+                rings[k] = r;
+                posns[k] = Math.floorMod(posn0 + r - ring0, n);
+                scramble(spec, rings, posns, climber._scramblers);
+                double score = climber.score(stage);
+                if (score > best) {
+                    best = score;
+                    bestRing = r;
+                }
+            }
+        }
+        rings[k] = bestRing;
+        posns[k] = Math.floorMod(posn0 + bestRing - ring0, n);
+        scramble(spec, rings, posns, climber._scramblers);
+        return bestRing != ring0;
+    }
+
+    /** A plugboard hill climb at one unplugged setting. */
+    private final class Climber {
+
+        /** A climb for the setting whose unplugged substitutions at each
+         *  step of the message are SCRAMBLERS, starting with no
+         *  plugboard. */
+        Climber(int[][] scramblers) {
+            int n = _alphabet.size();
+            _scramblers = scramblers;
+            _plug = new int[n];
+            for (int a = 0; a < n; a += 1) {
+                _plug[a] = a;
+            }
+            _plain = new int[_ciphertext.length];
+            _counts = new int[n];
+        }
+
+        /** Plug A to B, first unplugging both from their current partners.
+         *  If A and B were plugged together, just unplug them. */
+        void swap(int a, int b) {
+            int pa = _plug[a], pb = _plug[b];
+            _plug[pa] = pa;
+            _plug[pb] = pb;
+            _plug[a] = a;
+            _plug[b] = b;
+            if (pa != b) {
+                _plug[a] = b;
+                _plug[b] = a;
+            }
+        }
+
+        /** Restore the plugging of A to PA and B to PB, undoing swap(A, B).
+         */
+        private void restore(int a, int pa, int b, int pb) {
+            _plug[_plug[a]] = _plug[a];
+            _plug[_plug[b]] = _plug[b];
+            _plug[a] = pa;
+            _plug[pa] = a;
+            _plug[b] = pb;
+            _plug[pb] = b;
+        }
+
+        /** Hill-climb my plugboard by score STAGE (0 being the index of
+         *  coincidence and K > 0 the (K-1)st n-gram table), until no
+         *  single swap improves it, and return the final score. */
+        double climb(int stage) {
+            int n = _alphabet.size();
+            double best = score(stage);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < n; a += 1) {
+                    for (int b = a + 1; b < n; b += 1) {
+                        int pa = _plug[a], pb = _plug[b];
+                        swap(a, b);
+                        double score = score(stage);
+                        if (score > best) {
+                            best = score;
+                            improved = true;
+                        } else {
+                            restore(a, pa, b, pb);
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+
+        /** Hill-climb my plugboard by each score in turn, from the index
+         *  of coincidence to the last n-gram table, and return the final
+         *  score. */
+        double climbAll() {
+            double score = 0;
+            for (int stage = 0; stage <= _ngrams.length; stage += 1) {
+                score = climb(stage);
+            }
+            return score;
+        }
+
+        /** Decipher the message under my plugboard into _plain. */
+        void decipher() {
+            int[] cipher = _ciphertext, plain = _plain, plug = _plug;
+            int[][] scramblers = _scramblers;
+            for (int i = 0; i < plain.length; i += 1) {
+                plain[i] = plug[scramblers[i][plug[cipher[i]]]];
+            }
+        }
+
+        /** Return the score by STAGE of the decipherment of the message
+         *  under my plugboard. */
+        private double score(int stage) {
+            decipher();
+            if (stage == 0) {
+                return Ngrams.indexOfCoincidence(_plain, _plain.length,
+                                                 _counts);
+            }
+            return _ngrams[stage - 1].score(_plain, _plain.length);
+        }
+
+        /** Return my plugboard, as cycles. */
+        String plugboard() {
+            StringBuilder result = new StringBuilder();
+            for (int a = 0; a < _plug.length; a += 1) {
+                if (a < _plug[a]) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_plug[a])).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Unplugged substitutions at each step, replaced in place when
+         *  the rings are changed. */
+        private final int[][] _scramblers;
+
+        /** The plugboard: _plug[A] is the letter plugged to A. */
+        private final int[] _plug;
+
+        /** The current decipherment. */
+        private final int[] _plain;
+
+        /** Scratch space for letter counts. */
+        private final int[] _counts;
+    }
+
+    /** Run TASKS on the common ForkJoinPool, returning their futures. */
+    private static <T> List<Future<T>> invokeAll(
+        Collection<? extends Callable<T>> tasks) {
+        return ForkJoinPool.commonPool().invokeAll(tasks);
+    }
+
+    /** Attack the ciphertext in file ARGS[1], using the rotors in
+     *  configuration file ARGS[0], scoring with the n-gram count files
+     *  ARGS[2], ...  Prints the best results as setting lines followed by
+     *  their decipherments, and reports progress on the standard error. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2) {
+                throw error("Usage: java enigma.CiphertextAttack CONFIG "
+                            + "CIPHERTEXT FILE [NGRAM FILE...]");
+            }
+            Machine config = Main.readConfig(args[0]);
+            String ciphertext = new String(Files.readAllBytes(
+                                               new File(args[1]).toPath()));
+            Ngrams[] ngrams = new Ngrams[args.length - 2];
+            for (int i = 2; i < args.length; i += 1) {
+                try (Reader counts = new FileReader(args[i])) {
+                    ngrams[i - 2] = new Ngrams(config.alphabet(), counts);
+                }
+            }
+            CiphertextAttack attack =
+                new CiphertextAttack(config, ciphertext, ngrams);
+            List<Result> results = attack.run(DEFAULT_CANDIDATES,
+                                              DEFAULT_RESTARTS,
+                                              System.nanoTime(), System.err);
+            for (Result result
+                     : results.subList(0, Math.min(REPORTED, results.size()))) {
+                System.out.printf("%s%n%s%n", result, result.plaintext());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of random swaps in the starting plugboard of a restart. */
+    private static final int RANDOM_PAIRS = 6;
+
+    /** Number of unplugged settings kept by main. */
+    private static final int DEFAULT_CANDIDATES = 200;
+
+    /** Number of restarts made by main. */
+    private static final int DEFAULT_RESTARTS = 800;
+
+    /** Number of results printed by main. */
+    private static final int REPORTED = 5;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The available rotors. */
+    private final Collection<Rotor> _catalogue;
+
+    /** The n-gram tables used after the index of coincidence. */
+    private final Ngrams[] _ngrams;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _ciphertext;
+}
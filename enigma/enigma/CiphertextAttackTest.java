@@ -0,0 +1,136 @@
+package enigma;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CiphertextAttack and Ngrams
+ *  classes.
+ *  @author Seongho Lee
+ */
+public class CiphertextAttackTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** English text used to train n-grams.  It shares no passage with
+     *  TEXT, so an attack must recover TEXT from general statistics of
+     *  the language rather than from its own n-grams. */
+    private static final String CORPUS =
+        "FOUR SCORE AND SEVEN YEARS AGO OUR FATHERS BROUGHT FORTH ON THIS "
+        + "CONTINENT A NEW NATION CONCEIVED IN LIBERTY AND DEDICATED TO THE "
+        + "PROPOSITION THAT ALL MEN ARE CREATED EQUAL NOW WE ARE ENGAGED IN "
+        + "A GREAT CIVIL WAR TESTING WHETHER THAT NATION OR ANY NATION SO "
+        + "CONCEIVED AND SO DEDICATED CAN LONG ENDURE WE ARE MET ON A GREAT "
+        + "BATTLEFIELD OF THAT WAR WE HAVE COME TO DEDICATE A PORTION OF "
+        + "THAT FIELD AS A FINAL RESTING PLACE FOR THOSE WHO HERE GAVE THEIR "
+        + "LIVES THAT THAT NATION MIGHT LIVE IT IS ALTOGETHER FITTING AND "
+        + "PROPER THAT WE SHOULD DO THIS BUT IN A LARGER SENSE WE CAN NOT "
+        + "DEDICATE WE CAN NOT CONSECRATE WE CAN NOT HALLOW THIS GROUND THE "
+        + "BRAVE MEN LIVING AND DEAD WHO STRUGGLED HERE HAVE CONSECRATED IT "
+        + "FAR ABOVE OUR POOR POWER TO ADD OR DETRACT THE WORLD WILL LITTLE "
+        + "NOTE NOR LONG REMEMBER WHAT WE SAY HERE BUT IT CAN NEVER FORGET "
+        + "WHAT THEY DID HERE IT IS FOR US THE LIVING RATHER TO BE DEDICATED "
+        + "HERE TO THE UNFINISHED WORK WHICH THEY WHO FOUGHT HERE HAVE THUS "
+        + "FAR SO NOBLY ADVANCED IT IS RATHER FOR US TO BE HERE DEDICATED TO "
+        + "THE GREAT TASK REMAINING BEFORE US THAT FROM THESE HONORED DEAD WE "
+        + "TAKE INCREASED DEVOTION TO THAT CAUSE FOR WHICH THEY GAVE THE LAST "
+        + "FULL MEASURE OF DEVOTION THAT WE HERE HIGHLY RESOLVE THAT THESE "
+        + "DEAD SHALL NOT HAVE DIED IN VAIN THAT THIS NATION UNDER GOD SHALL "
+        + "HAVE A NEW BIRTH OF FREEDOM AND THAT GOVERNMENT OF THE PEOPLE BY "
+        + "THE PEOPLE FOR THE PEOPLE SHALL NOT PERISH FROM THE EARTH CALL ME "
+        + "ISHMAEL SOME YEARS AGO NEVER MIND HOW LONG PRECISELY HAVING LITTLE "
+        + "OR NO MONEY IN MY PURSE AND NOTHING PARTICULAR TO INTEREST ME ON "
+        + "SHORE I THOUGHT I WOULD SAIL ABOUT A LITTLE AND SEE THE WATERY "
+        + "PART OF THE WORLD IT IS A WAY I HAVE OF DRIVING OFF THE SPLEEN "
+        + "AND REGULATING THE CIRCULATION WHENEVER I FIND MYSELF GROWING GRIM "
+        + "ABOUT THE MOUTH WHENEVER IT IS A DAMP DRIZZLY NOVEMBER IN MY SOUL "
+        + "THEN I ACCOUNT IT HIGH TIME TO GET TO SEA AS SOON AS I CAN";
+
+    /** English text, used as a message. */
+    private static final String TEXT =
+        "IT WAS THE BEST OF TIMES IT WAS THE WORST OF TIMES IT WAS THE AGE "
+        + "OF WISDOM IT WAS THE AGE OF FOOLISHNESS IT WAS THE EPOCH OF "
+        + "BELIEF IT WAS THE EPOCH OF INCREDULITY IT WAS THE SEASON OF LIGHT "
+        + "IT WAS THE SEASON OF DARKNESS IT WAS THE SPRING OF HOPE IT WAS "
+        + "THE WINTER OF DESPAIR WE HAD EVERYTHING BEFORE US WE HAD NOTHING "
+        + "BEFORE US WE WERE ALL GOING DIRECT TO HEAVEN WE WERE ALL GOING "
+        + "DIRECT THE OTHER WAY IN SHORT THE PERIOD WAS SO FAR LIKE THE "
+        + "PRESENT PERIOD THAT SOME OF ITS NOISIEST AUTHORITIES INSISTED ON "
+        + "ITS BEING RECEIVED FOR GOOD OR FOR EVIL IN THE SUPERLATIVE DEGREE "
+        + "OF COMPARISON ONLY THERE WERE A KING WITH A LARGE JAW AND A QUEEN "
+        + "WITH A PLAIN FACE ON THE THRONE OF ENGLAND THERE WERE A KING WITH "
+        + "A LARGE JAW AND A QUEEN WITH A FAIR FACE ON THE THRONE OF FRANCE "
+        + "IN BOTH COUNTRIES IT WAS CLEARER THAN CRYSTAL TO THE LORDS OF THE "
+        + "STATE PRESERVES OF LOAVES AND FISHES THAT THINGS IN GENERAL WERE "
+        + "SETTLED FOR EVER";
+
+    @Test
+    public void checkNgrams() {
+        Ngrams bigrams = new Ngrams(UPPER, 2, "AB, AB");
+        Ngrams read = new Ngrams(UPPER, new StringReader("AB 2\n\nBA 1\n"));
+        assertEquals(2, read.length());
+        int[] text = { 0, 1, 0, 1 };
+        assertEquals(bigrams.score(text, 4), read.score(text, 4), 1e-6);
+        assertEquals(Math.log(2.0 / 3) * 2 + Math.log(1.0 / 3),
+                     read.score(text, 4), 1e-6);
+        assertTrue(read.score(new int[] { 2, 2 }, 2) < Math.log(1.0 / 3));
+        int[] counts = new int[26];
+        assertEquals(4.0 / 12, Ngrams.indexOfCoincidence(text, 4, counts),
+                     1e-9);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkMixedNgrams() {
+        new Ngrams(UPPER, new StringReader("AB 2\nABC 1\n"));
+    }
+
+    @Test
+    public void checkAttack() {
+        Machine machine = new Machine(UPPER, 3, 2, navalRotors());
+        machine.insertRotors(new String[] { "B", "IV", "II" });
+        machine.setRotors("JQ");
+        machine.setPlugboard(new Permutation("(AT) (EZ) (OX)", UPPER));
+        String plain = TEXT.replace(" ", "");
+        String cipher = machine.convert(plain);
+        CiphertextAttack attack =
+            new CiphertextAttack(new Machine(UPPER, 3, 2, navalRotors()),
+                                 cipher, new Ngrams(UPPER, 2, CORPUS),
+                                 new Ngrams(UPPER, 3, CORPUS));
+        List<CiphertextAttack.Result> results = attack.run(20, 40, 1, null);
+        assertEquals(40, results.size());
+        CiphertextAttack.Result best = results.get(0);
+        assertEquals("* B IV II JQ (AT) (EZ) (OX)", best.toString());
+        assertEquals(plain, best.plaintext());
+        for (CiphertextAttack.Result result : results) {
+            assertTrue(result.score() <= best.score());
+        }
+    }
+
+    @Test
+    public void checkRings() {
+        Machine machine = new Machine(UPPER, 3, 2, navalRotors());
+        machine.insertRotors(new String[] { "B", "IV", "II" });
+        machine.setRings("AF");
+        machine.setRotors("JQ");
+        machine.setPlugboard(new Permutation("(AT) (EZ) (OX)", UPPER));
+        String plain = TEXT.replace(" ", "");
+        String cipher = machine.convert(plain);
+        CiphertextAttack attack =
+            new CiphertextAttack(new Machine(UPPER, 3, 2, navalRotors()),
+                                 cipher, new Ngrams(UPPER, 2, CORPUS),
+                                 new Ngrams(UPPER, 3, CORPUS));
+        CiphertextAttack.Result best = attack.run(20, 40, 1, null).get(0);
+        assertEquals("AF", best.rings());
+        assertEquals("* B IV II JQ AF (AT) (EZ) (OX)", best.toString());
+        assertEquals(plain, best.plaintext());
+    }
+
+}
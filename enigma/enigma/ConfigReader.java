@@ -0,0 +1,276 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass reader for machine configuration files.  A configuration
+ *  consists of the characters of the alphabet, the number of rotor slots,
+ *  the number of pawls, and then any number of rotor descriptions, each a
+ *  name, a type letter (M for moving, N for non-moving, R for reflector)
+ *  followed immediately by the notches of a moving rotor, and the rotor's
+ *  permutation as cycles in parentheses, which may continue over any
+ *  number of lines.  Items are separated by whitespace, which is
+ *  otherwise ignored.  Characters may be any Unicode code points,
+ *  including those written as surrogate pairs.
+ *
+ *  <p>The input is scanned directly from a buffer, and each rotor's
+ *  permutation is built as a table as its cycles are read, so that large
+ *  catalogues are read in time proportional to their size.  Errors are
+ *  reported with the line and column at which they were found.
+ *  @author Seongho Lee
+ */
+final class ConfigReader {
+
+    /** A reader for the configuration in INPUT, whose name (used in error
+     *  messages) is NAME. */
+    ConfigReader(Reader input, String name) {
+        _input = input;
+        _name = name;
+    }
+
+    /** Read my configuration, and return a machine with its alphabet,
+     *  numbers of slots and pawls, and all its rotors available. */
+    Machine read() {
+        skipWhitespace();
+        String chars = word("alphabet");
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            if (c == '*' || c == ')') {
+                throw errorAt("'%c' may not be in the alphabet", c);
+            }
+        }
+        Alphabet alphabet;
+        try {
+            alphabet = new Alphabet(chars);
+        } catch (EnigmaException excp) {
+            throw errorAt("%s", excp.getMessage());
+        }
+        int numRotors = number("number of rotor slots");
+        int pawls = number("number of pawls");
+        if (numRotors < 2 || pawls >= numRotors) {
+            throw errorAt("need at least two slots and fewer pawls than "
+                          + "slots");
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        HashSet<String> names = new HashSet<>();
+        int[] forward = new int[alphabet.size()];
+        boolean[] cycled = new boolean[alphabet.size()];
+        while (skipWhitespace() >= 0) {
+            int line = _line, column = _column;
+            String name = word("rotor name");
+            if (!names.add(name)) {
+                throw errorAt(line, column, "duplicate rotor %s", name);
+            }
+            skipWhitespace();
+            line = _line;
+            column = _column;
+            String type = word("rotor type");
+            String notches = type.substring(1);
+            int[] notchChars = notches.codePoints().toArray();
+            for (int i = 0; i < notchChars.length; i += 1) {
+                if (!alphabet.contains(notchChars[i])) {
+                    throw errorAt(line, column + 1 + i,
+                                  "notch '%c' is not in the alphabet",
+                                  notchChars[i]);
+                }
+            }
+            if (type.charAt(0) != 'M' && !notches.isEmpty()) {
+                throw errorAt(line, column + 1, "only moving rotors have "
+                              + "notches");
+            }
+            Permutation perm = cycles(alphabet, forward, cycled);
+            switch (type.charAt(0)) {
+            case 'M':
+                rotors.add(new MovingRotor(name, perm, notches));
+                break;
+            case 'N':
+                rotors.add(new FixedRotor(name, perm));
+                break;
+            case 'R':
+                rotors.add(new Reflector(name, perm));
+                break;
+            default:
+                throw errorAt(line, column, "bad rotor type '%c'",
+                              type.charAt(0));
+            }
+        }
+        return new Machine(alphabet, numRotors, pawls,
+                           new Catalogue(rotors));
+    }
+
+    /** Read the cycles that follow a rotor's type, up to the next item
+     *  that is not a cycle, and return the permutation of ALPHABET they
+     *  describe.  FORWARD and CYCLED, as long as the alphabet, are scratch
+     *  space. */
+    private Permutation cycles(Alphabet alphabet, int[] forward,
+                               boolean[] cycled) {
+        for (int i = 0; i < forward.length; i += 1) {
+            forward[i] = i;
+        }
+        Arrays.fill(cycled, false);
+        while (skipWhitespace() == '(') {
+            next();
+            int first = -1, last = -1;
+            while (true) {
+                int line = _line, column = _column;
+                int c = next();
+                if (Character.isHighSurrogate((char) c)
+                    && Character.isLowSurrogate((char) peek())) {
+                    c = Character.toCodePoint((char) c, (char) next());
+                }
+                if (c == ')') {
+                    break;
+                } else if (c < 0) {
+                    throw errorAt("unterminated cycle");
+                } else if (Character.isWhitespace(c)) {
+                    continue;
+                } else if (c == '(') {
+                    throw errorAt(line, column, "nested '('");
+                } else if (!alphabet.contains(c)) {
+                    throw errorAt(line, column,
+                                  "'%c' is not in the alphabet", c);
+                }
+                int k = alphabet.toInt(c);
+                if (cycled[k]) {
+                    throw errorAt(line, column,
+                                  "'%c' appears in more than one cycle", c);
+                }
+                cycled[k] = true;
+                if (last >= 0) {
+                    forward[last] = k;
+                } else {
+                    first = k;
+                }
+                last = k;
+            }
+            if (last >= 0) {
+                forward[last] = first;
+            }
+        }
+        return new Permutation(alphabet, forward);
+    }
+
+    /** Return the item at the current position, which must be one of
+     *  WHAT: a run of characters other than whitespace and '('. */
+    private String word(String what) {
+        _word.setLength(0);
+        for (int c = peek();
+             c >= 0 && c != '(' && !Character.isWhitespace(c); c = peek()) {
+            _word.append((char) next());
+        }
+        if (_word.length() == 0) {
+            throw errorAt("expected %s", what);
+        }
+        return _word.toString();
+    }
+
+    /** Skip whitespace and read a non-negative decimal integer, which
+     *  must be WHAT. */
+    private int number(String what) {
+        skipWhitespace();
+        int line = _line, column = _column;
+        String digits = word(what);
+        try {
+            int result = Integer.parseInt(digits);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw errorAt(line, column, "expected %s, not %s", what, digits);
+    }
+
+    /** Skip whitespace, and return the next character (as by peek()). */
+    private int skipWhitespace() {
+        int c;
+        for (c = peek(); c >= 0 && Character.isWhitespace(c); c = peek()) {
+            next();
+        }
+        return c;
+    }
+
+    /** Return the next character without consuming it, or -1 at the end
+     *  of the input. */
+    private int peek() {
+        if (_pos == _limit) {
+            try {
+                _limit = _input.read(_buf);
+            } catch (IOException excp) {
+                throw error("%s: could not read: %s", _name,
+                            excp.getMessage());
+            }
+            _pos = 0;
+            if (_limit <= 0) {
+                _limit = 0;
+                return -1;
+            }
+        }
+        return _buf[_pos];
+    }
+
+    /** Consume and return the next character, or -1 at the end of the
+     *  input, keeping track of the line and column.  Columns count code
+     *  points, so the second char of a surrogate pair does not advance
+     *  the column. */
+    private int next() {
+        int c = peek();
+        if (c < 0) {
+            return c;
+        }
+        _pos += 1;
+        if (c == '\n') {
+            _line += 1;
+            _column = 1;
+        } else if (!Character.isLowSurrogate((char) c)) {
+            _column += 1;
+        }
+        return c;
+    }
+
+    /** Return an exception for an error at the current position, with the
+     *  message formed from MSG and ARGS as for String.format. */
+    private EnigmaException errorAt(String msg, Object... args) {
+        return errorAt(_line, _column, msg, args);
+    }
+
+    /** Return an exception for an error at line LINE and column COLUMN,
+     *  with the message formed from MSG and ARGS as for String.format. */
+    private EnigmaException errorAt(int line, int column, String msg,
+                                    Object... args) {
+        return error("%s:%d:%d: %s", _name, line, column,
+                     String.format(msg, args));
+    }
+
+    /** Size of _buf. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** Source of the configuration. */
+    private final Reader _input;
+
+    /** Name of the configuration. */
+    private final String _name;
+
+    /** Input not yet scanned is _buf[_pos .. _limit-1]. */
+    private final char[] _buf = new char[BUFFER_SIZE];
+
+    /** Position of the next character in _buf. */
+    private int _pos;
+
+    /** Number of valid characters in _buf. */
+    private int _limit;
+
+    /** Line of the next character, from 1. */
+    private int _line = 1;
+
+    /** Column of the next character, from 1. */
+    private int _column = 1;
+
+    /** Scratch space for items. */
+    private final StringBuilder _word = new StringBuilder();
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigReader class.
+ *  @author Seongho Lee
+ */
+public class ConfigReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A small configuration, with a continued and an unspaced cycle. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR)(HIX)\n"
+        + "\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Return the machine described by the configuration TEXT. */
+    private static Machine read(String text) {
+        return new ConfigReader(new StringReader(text), "test").read();
+    }
+
+    /** Check that reading TEXT fails with an error message starting with
+     *  PREFIX. */
+    private static void checkError(String text, String prefix) {
+        try {
+            read(text);
+            fail("no error for " + prefix);
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(),
+                       excp.getMessage().startsWith(prefix));
+        }
+    }
+
+    @Test
+    public void checkRead() {
+        Machine machine = read(CONFIG);
+        assertEquals(26, machine.alphabet().size());
+        assertEquals(5, machine.numRotors());
+        assertEquals(3, machine.numPawls());
+        assertEquals(5, machine.allRotors().size());
+        for (Rotor rotor : machine.allRotors()) {
+            if (NAVALA_MAP.containsKey(rotor.name())) {
+                for (int i = 0; i < 26; i += 1) {
+                    assertEquals(rotor.name(),
+                                 NAVALA_MAP.get(rotor.name()).charAt(i),
+                                 UPPER.toChar(rotor.convertForward(i)));
+                }
+            }
+        }
+        machine.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        machine.setRotors("AAAA");
+        machine.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        assertEquals("IHBDQQMTQZ", machine.convert("HELLO WORLD"));
+    }
+
+    @Test
+    public void checkErrors() {
+        checkError("ABC", "test:1:4: expected number of rotor slots");
+        checkError("ABC 3 x", "test:1:7: expected number of pawls, not x");
+        checkError("ABC 3 3", "test:1:8: need at least two slots");
+        checkError("ABC 3 1\n R1 R (AB)\n X M (AD)",
+                   "test:3:8: 'D' is not in the alphabet");
+        checkError("ABC 3 1\n R1 R (AB)\n X M (A(B)",
+                   "test:3:8: nested '('");
+        checkError("ABC 3 1\n X MA (AB)\n X M",
+                   "test:3:2: duplicate rotor X");
+        checkError("ABC 3 1\n X MD (AB)", "test:2:5: notch 'D'");
+        checkError("ABC 3 1\n X RA (AB)", "test:2:5: only moving rotors");
+        checkError("ABC 3 1\n X Q (AB)", "test:2:4: bad rotor type 'Q'");
+        checkError("ABC 3 1\n X M (AB)\n(BC)",
+                   "test:3:2: 'B' appears in more than one cycle");
+        checkError("ABC 3 1\n X M (AB", "test:2:9: unterminated cycle");
+        checkError("ABC 3 1\n X", "test:2:3: expected rotor type");
+    }
+
+    @Test
+    public void checkLargeCatalogue() {
+        StringBuilder text = new StringBuilder();
+        text.append(UPPER_STRING).append(" 5 3\n");
+        for (int i = 0; i < 5000; i += 1) {
+            text.append("R").append(i).append(" MAN (")
+                .append(UPPER_STRING.substring(i % 26))
+                .append(UPPER_STRING, 0, i % 26).append(")\n");
+        }
+        Machine machine = read(text.toString());
+        assertEquals(5000, machine.allRotors().size());
+    }
+
+}
@@ -0,0 +1,374 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext ("crib") search for the rotor order and initial
+ *  rotor settings of an unplugged Enigma machine.  Given a ciphertext and
+ *  a crib (plaintext believed to occur somewhere in the message), every
+ *  legal choice of reflector and rotors from a configuration's rotor
+ *  catalogue is tried at every combination of initial settings, and each
+ *  key under which the crib deciphers correctly at some position is
+ *  reported.  Since an Enigma never enciphers a letter to itself, crib
+ *  positions at which any crib letter lines up with the same ciphertext
+ *  letter are ruled out before the search starts.  The work is divided
+ *  among all processors.
+ *  @author Seongho Lee
+ */
+class KeySearch {
+
+    /** A key under which the crib deciphers correctly. */
+    static final class Candidate {
+
+        /** A candidate with rotors ROTORS (reflector first), initial
+         *  SETTING, under which the crib appears at POSITION. */
+        Candidate(String[] rotors, String setting, int position) {
+            _rotors = rotors.clone();
+            _setting = setting;
+            _position = position;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my initial rotor settings. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the position of the crib in the message. */
+        int position() {
+            return _position;
+        }
+
+        /** Return my setting line, as accepted by Main. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        /** Names of the rotors. */
+        private final String[] _rotors;
+
+        /** Initial settings. */
+        private final String _setting;
+
+        /** Position of the crib. */
+        private final int _position;
+    }
+
+    /** A search for keys of machines configured like CONFIG, as returned
+     *  by Main.readConfig, under which CIPHERTEXT deciphers to a message
+     *  containing CRIB.  Blanks in CIPHERTEXT and CRIB are ignored. */
+    KeySearch(Machine config, String ciphertext, String crib) {
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _pawls = config.numPawls();
+        _catalogue = config.allRotors();
+        _ciphertext = toIndices(ciphertext);
+        _crib = toIndices(crib);
+        if (_crib.length == 0 || _crib.length > _ciphertext.length) {
+            throw error("crib must be non-empty and fit in the message");
+        }
+        ArrayList<Integer> positions = new ArrayList<>();
+        for (int p = 0; p + _crib.length <= _ciphertext.length; p += 1) {
+            boolean possible = true;
+            for (int i = 0; i < _crib.length && possible; i += 1) {
+                possible = _crib[i] != _ciphertext[p + i];
+            }
+            if (possible) {
+                positions.add(p);
+            }
+        }
+        _positions = new int[positions.size()];
+        for (int i = 0; i < _positions.length; i += 1) {
+            _positions[i] = positions.get(i);
+        }
+    }
+
+    /** Return the crib positions not ruled out by the fact that no letter
+     *  enciphers to itself. */
+    int[] positions() {
+        return _positions.clone();
+    }
+
+    /** Return the number of keys tried so far by search. */
+    long keysTested() {
+        return _tested.get();
+    }
+
+    /** Search all keys, and return the candidates found, in no particular
+     *  order.  No key is tried if the crib fits nowhere.  If PROGRESS is
+     *  not null, report progress and throughput on it periodically and at
+     *  the end. */
+    List<Candidate> search(PrintStream progress) {
+        if (_positions.length == 0) {
+            return new ArrayList<>();
+        }
+        List<Candidate> found = Collections.synchronizedList(
+            new ArrayList<Candidate>());
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (String[] order : rotorOrders(_catalogue, _numRotors, _pawls)) {
+            Machine machine = new Machine(_alphabet, _numRotors, _pawls,
+                                          _catalogue);
+            machine.insertRotors(order);
+            MachineSpec spec = machine.spec();
+            for (int first = 0; first < _alphabet.size(); first += 1) {
+                final int leftmost = first;
+                tasks.add(() -> {
+                    searchFrom(spec, order, leftmost, found);
+                    return null;
+                });
+            }
+        }
+        long total = (long) tasks.size();
+        for (int i = 2; i < _numRotors; i += 1) {
+            total *= _alphabet.size();
+        }
+        _tested.set(0);
+        long start = System.nanoTime();
+        Thread reporter = null;
+        if (progress != null) {
+            reporter = startReporter(progress, total, start, found);
+        }
+        try {
+            for (Future<Void> done : ForkJoinPool.commonPool()
+                     .invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("key search failed: %s", excp);
+        } finally {
+            if (reporter != null) {
+                reporter.interrupt();
+            }
+        }
+        if (progress != null) {
+            report(progress, total, start, found.size());
+        }
+        return new ArrayList<>(found);
+    }
+
+    /** Try every key using SPEC, whose rotors are named ORDER, in which
+     *  the leftmost non-reflector rotor has setting LEFTMOST, adding
+     *  those under which the crib deciphers correctly to FOUND. */
+    private void searchFrom(MachineSpec spec, String[] order, int leftmost,
+                            List<Candidate> found) {
+        Machine machine = spec.newMachine();
+        int n = _alphabet.size();
+        int[] posns = new int[_numRotors];
+        posns[1] = leftmost;
+        int length = _positions.length == 0 ? 0
+            : _positions[_positions.length - 1] + _crib.length;
+        int[] plain = new int[length];
+        long tested = 0;
+        while (true) {
+            machine.setRotors(posns);
+            for (int i = 0; i < length; i += 1) {
+                plain[i] = machine.convert(_ciphertext[i]);
+            }
+            for (int p : _positions) {
+                int i;
+                for (i = 0; i < _crib.length; i += 1) {
+                    if (plain[p + i] != _crib[i]) {
+                        break;
+                    }
+                }
+                if (i == _crib.length) {
+                    found.add(new Candidate(order, settingString(posns), p));
+                }
+            }
+            tested += 1;
+            if (tested == PROGRESS_BATCH) {
+                _tested.addAndGet(tested);
+                tested = 0;
+            }
+            int k;
+            for (k = _numRotors - 1; k > 1; k -= 1) {
+                posns[k] += 1;
+                if (posns[k] < n) {
+                    break;
+                }
+                posns[k] = 0;
+            }
+            if (k == 1) {
+                break;
+            }
+        }
+        _tested.addAndGet(tested);
+    }
+
+    /** Return all legal rotor orders for a machine with NUMROTORS slots
+     *  and PAWLS pawls using rotors from CATALOGUE: a reflector, then
+     *  non-moving rotors in the slots without pawls, then moving rotors in
+     *  the rest, with no rotor used twice. */
+    static List<String[]> rotorOrders(Collection<Rotor> catalogue,
+                                      int numRotors, int pawls) {
+        ArrayList<String[]> result = new ArrayList<>();
+        addOrders(catalogue, pawls, new String[numRotors], 0, result);
+        return result;
+    }
+
+    /** Add to RESULT all legal completions of ORDER using rotors from
+     *  CATALOGUE with PAWLS pawls, where the slots before SLOT are already
+     *  filled. */
+    private static void addOrders(Collection<Rotor> catalogue, int pawls,
+                                  String[] order, int slot,
+                                  List<String[]> result) {
+        if (slot == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (Rotor rotor : catalogue) {
+            boolean fits;
+            if (slot == 0) {
+                fits = rotor.reflecting();
+            } else if (slot < order.length - pawls) {
+                fits = !rotor.reflecting() && !rotor.rotates();
+            } else {
+                fits = rotor.rotates();
+            }
+            for (int i = 0; i < slot && fits; i += 1) {
+                fits = !order[i].equals(rotor.name());
+            }
+            if (fits) {
+                order[slot] = rotor.name();
+                addOrders(catalogue, pawls, order, slot + 1, result);
+            }
+        }
+    }
+
+    /** Return a daemon thread, already started, that reports progress
+     *  through TOTAL keys from time START on PROGRESS every
+     *  PROGRESS_INTERVAL milliseconds, until interrupted.  FOUND is the
+     *  list of candidates. */
+    private Thread startReporter(PrintStream progress, long total,
+                                 long start, List<Candidate> found) {
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(PROGRESS_INTERVAL);
+                    report(progress, total, start, found.size());
+                }
+            } catch (InterruptedException excp) {
+                return;
+            }
+        });
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+
+    /** Report on PROGRESS the number of keys tried of TOTAL, the rate since
+     *  time START, and the number of CANDIDATES. */
+    private void report(PrintStream progress, long total, long start,
+                        int candidates) {
+        long tested = _tested.get();
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        progress.printf("%d/%d keys (%.1f%%), %.0f keys/sec, "
+                        + "%d candidates%n",
+                        tested, total, 100.0 * tested / Math.max(1, total),
+                        tested / seconds, candidates);
+    }
+
+    /** Return the setting string for rotor settings POSNS. */
+    private String settingString(int[] posns) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < _numRotors; i += 1) {
+            result.append(_alphabet.toChar(posns[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return the alphabet indices of the non-blank characters of S. */
+    private int[] toIndices(String s) {
+        int[] result = new int[s.length()];
+        int n = 0;
+        for (int i = 0; i < s.length(); i += 1) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                result[n] = _alphabet.toInt(s.charAt(i));
+                n += 1;
+            }
+        }
+        int[] trimmed = new int[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /** Search for keys for the ciphertext in ARGS[2] (or the standard
+     *  input, if absent), using the rotors in configuration file ARGS[0],
+     *  under which it contains the crib ARGS[1].  Prints each candidate
+     *  as a setting line followed by the crib position, and reports
+     *  progress on the standard error. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Usage: java enigma.KeySearch CONFIG CRIB "
+                            + "[CIPHERTEXT FILE]");
+            }
+            Machine config = Main.readConfig(args[0]);
+            String ciphertext;
+            if (args.length > 2) {
+                ciphertext = new String(Files.readAllBytes(
+                                            new File(args[2]).toPath()));
+            } else {
+                ciphertext = new String(System.in.readAllBytes());
+            }
+            KeySearch search = new KeySearch(config, ciphertext, args[1]);
+            for (Candidate key : search.search(System.err)) {
+                System.out.printf("%s @%d%n", key, key.position());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of keys a worker tries between updates of _tested. */
+    private static final int PROGRESS_BATCH = 4096;
+
+    /** Milliseconds between progress reports. */
+    private static final long PROGRESS_INTERVAL = 1000;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The available rotors. */
+    private final Collection<Rotor> _catalogue;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _ciphertext;
+
+    /** The crib, as alphabet indices. */
+    private final int[] _crib;
+
+    /** Possible crib positions, in increasing order. */
+    private final int[] _positions;
+
+    /** Number of keys tried so far. */
+    private final AtomicLong _tested = new AtomicLong();
+}
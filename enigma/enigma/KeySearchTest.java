@@ -0,0 +1,70 @@
+package enigma;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Seongho Lee
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "WETTERVORHERSAGEBISKAYAKEINEBESONDERENVORKOMMNISSE";
+
+    /** A 3-slot, 2-pawl machine with the naval rotors, set up with ROTORS
+     *  at SETTING. */
+    private static Machine small(String[] rotors, String setting) {
+        Machine machine = new Machine(UPPER, 3, 2, navalRotors());
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        return machine;
+    }
+
+    @Test
+    public void checkPositions() {
+        Machine config = new Machine(UPPER, 3, 2, navalRotors());
+        KeySearch search = new KeySearch(config, "ABCDE", "XBX");
+        assertArrayEquals(new int[] { 1, 2 }, search.positions());
+    }
+
+    @Test
+    public void checkNoPositions() {
+        Machine config = new Machine(UPPER, 3, 2, navalRotors());
+        KeySearch search = new KeySearch(config, "AAAAAAAA", "AB");
+        assertEquals(0, search.positions().length);
+        assertTrue(search.search(null).isEmpty());
+        assertEquals(0, search.keysTested());
+    }
+
+    @Test
+    public void checkSearch() {
+        String[] rotors = { "C", "V", "II" };
+        String cipher = small(rotors, "QE").convert(PLAIN);
+        Machine config = new Machine(UPPER, 3, 2, navalRotors());
+        KeySearch search = new KeySearch(config, cipher, "KEINEBESONDEREN");
+        List<KeySearch.Candidate> found = search.search(null);
+        assertEquals(2 * 8 * 7 * 26 * 26, search.keysTested());
+        boolean seen = false;
+        for (KeySearch.Candidate key : found) {
+            assertEquals(PLAIN.substring(key.position(),
+                                         key.position() + 15),
+                         small(key.rotors(), key.setting()).convert(cipher)
+                         .substring(key.position(), key.position() + 15));
+            seen |= key.toString().equals("* C V II QE")
+                && key.position() == PLAIN.indexOf("KEINE");
+        }
+        assertTrue("key not found", seen);
+    }
+
+}
@@ -1,9 +1,15 @@
 package enigma;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.*;
 
@@ -17,17 +23,33 @@ class Machine {
 
 /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
  *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
- *  available rotors. */
+ *  available rotors, which must have distinct names.  It is indexed
+ *  once, unless it is already a Catalogue. */
 
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = allRotors;
+        _allRotors = Catalogue.of(allRotors);
         _rotors = new ArrayList<>();
     }
 
+    /** A new Enigma machine configured as described by SPEC, with all of
+     *  its rotors at their 0 setting.  Only the settings are particular to
+     *  the new machine, so this is cheap, and machines sharing SPEC may be
+     *  used by different threads. */
+    Machine(MachineSpec spec) {
+        this(spec.alphabet(), spec.numRotors(), spec.numPawls(),
+             spec.catalogue());
+        for (int i = 0; i < _numRotors; i += 1) {
+            _rotors.add(spec.rotor(i));
+        }
+        _plugboard = spec.plugboard();
+        _spec = spec;
+        _positions = new int[_numRotors];
+    }
+
 
 /** Return the number of rotor slots I have. */
 
@@ -45,30 +67,70 @@ class Machine {
 
 /** Set my rotor slots to the rotors named ROTORS from my set of
  *  available rotors (ROTORS[0] names the reflector).
- *  Initially, all rotors are set at their 0 setting. */
+ *  Initially, all rotors are set at their 0 setting.  Each rotor is
+ *  looked up by name, so the cost does not depend on the number of
+ *  rotors available. */
 
     void insertRotors(String[] rotors) {
-        for (int i = 0; i < rotors.length; i++) {
-            boolean check = false;
-            for (Rotor rotor: _allRotors) {
-                if (rotors[i].equals(rotor.name())) {
-                    check = true;
-                }
-                if (rotors[0].equals(rotor.name())) {
-                    Rotor reflector = rotor;
-                }
-            }
-            if (!check) {
+        clearCache();
+        if (rotors.length != _numRotors) {
+            throw error("wrong number of rotors");
+        }
+        _rotors.clear();
+        for (String name : rotors) {
+            Rotor found = _allRotors.get(name);
+            if (found == null) {
                 throw error("wrong rotor");
             }
-            for (String name : rotors) {
-                for (Rotor rotor : _allRotors) {
-                    if (name.equals(rotor.name())) {
-                        _rotors.add(rotor);
-                    }
-                }
+            if (_rotors.contains(found)) {
+                throw error("rotor %s used twice", name);
             }
+            _rotors.add(found);
         }
+        _spec = new MachineSpec(_alphabet, _pawls,
+                                _rotors.toArray(new Rotor[_numRotors]),
+                                _plugboard);
+        _positions = new int[_numRotors];
+    }
+
+    /** Configure me as described by SPEC, which must have my alphabet and
+     *  number of slots, with all rotors at their 0 setting.  This is
+     *  equivalent to inserting its rotors and setting its plugboard and
+     *  ring settings, but builds nothing. */
+    void setSpec(MachineSpec spec) {
+        if (spec.numRotors() != _numRotors
+            || spec.alphabet().size() != _alphabet.size()) {
+            throw error("machine description does not fit");
+        }
+        _rotors.clear();
+        for (int i = 0; i < _numRotors; i += 1) {
+            _rotors.add(spec.rotor(i));
+        }
+        _plugboard = spec.plugboard();
+        _spec = spec;
+        _positions = new int[_numRotors];
+        clearCache();
+    }
+
+    /** Return the description of my alphabet, rotors and plugboard, from
+     *  which further machines like me may be made. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the current setting of the rotor in slot K. */
+    int setting(int k) {
+        return _positions[k];
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the rotors available to me. */
+    Catalogue allRotors() {
+        return _allRotors;
     }
 
 
@@ -77,15 +139,49 @@ class Machine {
  *  to the leftmost rotor setting (not counting the reflector).  */
 
     void setRotors(String setting) {
-        for (int i = 1; i < _numRotors; i++) {
-            _rotors.get(i).set(setting.charAt(i - 1));
+        int[] posns = _alphabet.toInts(setting);
+        if (posns.length != _numRotors - 1) {
+            throw error("setting %s has the wrong length", setting);
+        }
+        System.arraycopy(posns, 0, _positions, 1, posns.length);
+        _coreValid = false;
+    }
+
+    /** Set the ring settings of my rotors according to RINGS, which must
+     *  be a string of numRotors()-1 characters in my alphabet, the first
+     *  for the leftmost rotor (not counting the reflector).  Inserting
+     *  rotors resets all ring settings to 0. */
+    void setRings(String rings) {
+        int[] given = _alphabet.toInts(rings);
+        if (given.length != _numRotors - 1) {
+            throw error("ring setting %s has the wrong length", rings);
         }
+        if (_spec == null) {
+            throw error("no rotors inserted");
+        }
+        int[] posns = new int[_numRotors];
+        System.arraycopy(given, 0, posns, 1, given.length);
+        _spec = _spec.withRings(posns);
+        clearCache();
+    }
+
+    /** Set my rotors to POSNS, where POSNS[K] is the setting of the rotor
+     *  in slot K (POSNS[0], for the reflector, is ignored). */
+    void setRotors(int[] posns) {
+        for (int i = 1; i < _numRotors; i += 1) {
+            _positions[i] = posns[i];
+        }
+        _coreValid = false;
     }
 
 /** Set the plugboard to PLUGBOARD. */
 
     void setPlugboard(Permutation plugboard) {
-        _plugborad = plugboard;
+        _plugboard = plugboard;
+        if (_spec != null) {
+            _spec = _spec.withPlugboard(plugboard);
+        }
+        clearCache();
     }
 
 /** Returns t result of converting the input character C (as an
@@ -94,61 +190,339 @@ class Machine {
  *  the machine. */
 
     int convert(int c) {
-        int conver = c;
-        if (_plugborad != null) {
-            conver = _plugborad.permute(conver);
-        }
-        boolean already = false;
-        boolean[] check = new boolean[_numRotors];
-        for(int i = 1; i < _numRotors; i = i + 1) {
-            if (_rotors.get(i).atNotch() && _rotors.get(i - 1).rotates()) {
-                check[i] = true;
-                check[i - 1] = true;
+        advanceRotors();
+        if (_cacheCapacity > 0) {
+            return fusedTable()[c];
+        }
+        return substitute(c);
+    }
+
+    /** Advance the rotors as for one keypress, before the character is
+     *  converted.  A rotor moves if it is the rightmost, if the rotor to
+     *  its right is at a notch, or if it is itself at a notch and the
+     *  rotor to its left has a pawl.  Each rotor's notch is examined once,
+     *  before any rotor moves.  The core is invalidated if any rotor but
+     *  the rightmost moves. */
+    private void advanceRotors() {
+        MachineSpec spec = _spec;
+        int[] posns = _positions;
+        int last = _numRotors - 1;
+        boolean here = spec.rotor(1).atNotch(posns[1]);
+        for (int i = 1; i < last; i += 1) {
+            boolean right = spec.rotor(i + 1).atNotch(posns[i + 1]);
+            if (right && spec.carries(i + 1) || here && spec.carries(i)) {
+                posns[i] = posns[i] + 1 == _alphabet.size() ? 0 : posns[i] + 1;
+                _coreValid = false;
             }
+            here = right;
         }
-        for (int r = _numRotors - 1; r > 0; r = r - 1) {
-            if (_rotors.get(r).atNotch() && _rotors.get(r - 1).rotates()) {
-                if (already) {
-                    already = true;
-                }
-                else {
-                    already = false;
+        if (spec.rotates(last)) {
+            posns[last] = posns[last] + 1 == _alphabet.size()
+                ? 0 : posns[last] + 1;
+        }
+    }
+
+    /** Advance the rotors as if STEPS >= 0 characters had been
+     *  converted.  Runs of steps in which only the rightmost rotor moves
+     *  are skipped in one jump, so the cost is proportional to the number
+     *  of times a rotor other than the rightmost one moves. */
+    void seek(long steps) {
+        int last = _numRotors - 1;
+        while (steps > 0) {
+            long quiet = quietSteps();
+            if (quiet == 0) {
+                advanceRotors();
+                steps -= 1;
+            } else {
+                long k = Math.min(quiet, steps);
+                if (_spec.rotates(last)) {
+                    _positions[last] =
+                        (int) ((_positions[last] + k) % _alphabet.size());
                 }
+                steps -= k;
             }
         }
-        check[_numRotors - 1] = true;
+    }
 
-        for (int k = 0; k < _numRotors; k = k + 1 ) {
-            if (check[k]) {
-                _rotors.get(k).advance();
+    /** Return the number of steps, starting from the current settings,
+     *  in which only the rightmost rotor moves, or Long.MAX_VALUE if no
+     *  other rotor will ever move. */
+    private long quietSteps() {
+        int last = _numRotors - 1;
+        for (int i = 1; i < last; i += 1) {
+            if (_spec.carries(i) && _spec.rotor(i).atNotch(_positions[i])) {
+                return 0;
             }
         }
+        int distance = _spec.rotor(last).notchDistance(_positions[last]);
+        if (!_spec.carries(last) || distance < 0) {
+            return Long.MAX_VALUE;
+        }
+        return distance;
+    }
 
+    /** Return a new machine with my spec, settings and cache capacity,
+     *  whose rotors move independently of mine. */
+    Machine copy() {
+        Machine result = new Machine(_spec);
+        System.arraycopy(_positions, 0, result._positions, 0, _numRotors);
+        result.setCacheCapacity(_cacheCapacity);
+        return result;
+    }
+
+    /** Returns the encoding/decoding of MSG, as for convert(String), but
+     *  with long messages divided into segments that are converted in
+     *  parallel on the common ForkJoinPool by copies of me, each first
+     *  advanced to the start of its segment.  The result and my final
+     *  state are the same as for convert(String). */
+    String convertParallel(String msg) {
+        int[] letters = new int[msg.length()];
+        int n = 0;
+        for (int i = 0; i < msg.length(); ) {
+            int c = msg.codePointAt(i);
+            i += Character.charCount(c);
+            if (c != ' ') {
+                letters[n] = _alphabet.toInt(c);
+                n += 1;
+            }
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int segment = Math.max(MIN_SEGMENT,
+                               n / (SEGMENTS_PER_THREAD
+                                    * pool.getParallelism()) + 1);
+        int[] result = new int[n];
+        if (n <= segment) {
+            for (int i = 0; i < n; i += 1) {
+                result[i] = _alphabet.toCodePoint(convert(letters[i]));
+            }
+            return new String(result, 0, n);
+        }
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        Machine walker = copy();
+        for (int start = 0; start < n; start += segment) {
+            final int from = start, to = Math.min(n, start + segment);
+            final Machine machine = walker.copy();
+            walker.seek(to - from);
+            tasks.add(() -> {
+                for (int i = from; i < to; i += 1) {
+                    result[i] =
+                        _alphabet.toCodePoint(machine.convert(letters[i]));
+                }
+                return null;
+            });
+        }
+        for (Future<Void> done : pool.invokeAll(tasks)) {
+            try {
+                done.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw error("parallel conversion failed: %s", excp);
+            }
+        }
+        System.arraycopy(walker._positions, 0, _positions, 0, _numRotors);
+        _coreValid = false;
+        return new String(result, 0, n);
+    }
 
-        for (int j = 1; j < _numRotors; j = j + 1) {
-            conver = _rotors.get(_numRotors - j).convertForward(conver);
+    /** Return the result of passing C (an index in the range 0..alphabet
+     *  size - 1) through the plugboard, the rotors and reflector and back,
+     *  with the rotors at their current settings.  Everything to the left
+     *  of the rightmost rotor is taken in one step through the core, so
+     *  the cost does not depend on the number of slots. */
+    private int substitute(int c) {
+        if (!_coreValid) {
+            computeCore();
         }
-        for (Rotor rotor : _rotors) {
-            conver = rotor.convertBackward(conver);
+        Permutation plugboard = _spec.plugboard();
+        int last = _numRotors - 1;
+        int conver = c;
+        if (plugboard != null) {
+            conver = plugboard.permute(conver);
         }
-        if (_plugborad != null) {
-            conver = _plugborad.invert(conver);
+        conver = _core[forward(last, conver)];
+        conver = backward(last, conver);
+        if (plugboard != null) {
+            conver = plugboard.invert(conver);
         }
         return conver;
     }
 
+    /** Fill in _core with the substitution performed by the reflector
+     *  and the rotors between it and the rightmost rotor, at their
+     *  current settings: through each rotor forward, from right to left,
+     *  and back through each, from the reflector rightwards. */
+    private void computeCore() {
+        int n = _alphabet.size(), last = _numRotors - 1;
+        if (_core == null || _core.length != n) {
+            _core = new int[n];
+        }
+        for (int c = 0; c < n; c += 1) {
+            int conver = c;
+            for (int j = last - 1; j > 0; j -= 1) {
+                conver = forward(j, conver);
+            }
+            for (int k = 0; k < last; k += 1) {
+                conver = backward(k, conver);
+            }
+            _core[c] = conver;
+        }
+        _coreValid = true;
+    }
+
+    /** Return the result of passing C forward through the rotor in slot
+     *  J at its current setting. */
+    private int forward(int j, int c) {
+        int[][] table = _spec.forward(j);
+        if (table != null) {
+            return table[_positions[j]][c];
+        }
+        return _spec.rotor(j).convertForward(c,
+                                             _spec.offset(j, _positions[j]));
+    }
+
+    /** Return the result of passing C backward through the rotor in slot
+     *  K at its current setting. */
+    private int backward(int k, int c) {
+        int[][] table = _spec.backward(k);
+        if (table != null) {
+            return table[_positions[k]][c];
+        }
+        return _spec.rotor(k).convertBackward(c,
+                                              _spec.offset(k, _positions[k]));
+    }
+
+    /** Fill TABLE with the substitution performed by the machine with its
+     *  rotors at their current settings, without advancing them. */
+    void substitution(int[] table) {
+        for (int c = 0; c < _alphabet.size(); c += 1) {
+            table[c] = substitute(c);
+        }
+    }
+
+    /** Cache the complete substitution performed by the machine for up to
+     *  CAPACITY distinct rotor settings, evicting the least recently used
+     *  one beyond that.  A CAPACITY of 0 turns caching off.  When every
+     *  combination of settings fits, they are cached in a direct table
+     *  instead. */
+    void setCacheCapacity(int capacity) {
+        if (capacity < 0) {
+            throw error("negative cache capacity");
+        }
+        _cacheCapacity = capacity;
+        clearCache();
+    }
+
+    /** Discard all cached substitutions, including the core. */
+    private void clearCache() {
+        _coreValid = false;
+        _directCache = null;
+        _lruCache = null;
+        if (_cacheCapacity == 0) {
+            return;
+        }
+        long states = 1;
+        for (int i = 1; i < _numRotors; i += 1) {
+            if (states > Long.MAX_VALUE / _alphabet.size()) {
+                return;
+            }
+            states *= _alphabet.size();
+        }
+        if (states <= _cacheCapacity) {
+            _directCache = new int[(int) states][];
+        } else {
+            final int capacity = _cacheCapacity;
+            _lruCache = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, int[]> e) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+
+    /** Return the substitution performed by the machine with its rotors at
+     *  their current settings, computing and caching it if needed. */
+    private int[] fusedTable() {
+        long key = 0;
+        for (int i = 1; i < _numRotors; i += 1) {
+            key = key * _alphabet.size() + _positions[i];
+        }
+        int[] table = null;
+        if (_directCache != null) {
+            table = _directCache[(int) key];
+        } else if (_lruCache != null) {
+            table = _lruCache.get(key);
+        }
+        if (table == null) {
+            table = new int[_alphabet.size()];
+            substitution(table);
+            if (_directCache != null) {
+                _directCache[(int) key] = table;
+            } else if (_lruCache != null) {
+                _lruCache.put(key, table);
+            }
+        }
+        return table;
+    }
+
 
 /** Returns the encoding/decoding of MSG, updating the state of
  *  the rotors accordingly. */
 
     String convert(String msg) {
-        String converted = "";
-        msg = msg.replace(" ", "");
-        for (char c : msg.toCharArray()) {
-            int convert = convert(_alphabet.toInt(c));
-            converted += _alphabet.toChar(convert);
+        StringBuilder converted = new StringBuilder(msg.length());
+        convert(msg, converted);
+        return converted.toString();
+    }
+
+    /** Append the encoding/decoding of MSG to OUT, skipping blanks and
+     *  updating the state of the rotors accordingly. */
+    void convert(CharSequence msg, Appendable out) {
+        try {
+            for (int i = 0; i < msg.length(); ) {
+                int c = Character.codePointAt(msg, i);
+                i += Character.charCount(c);
+                if (c != ' ') {
+                    int e = _alphabet.toCodePoint(convert(_alphabet.toInt(c)));
+                    if (Character.isBmpCodePoint(e)) {
+                        out.append((char) e);
+                    } else {
+                        out.append(Character.highSurrogate(e))
+                            .append(Character.lowSurrogate(e));
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write message: %s", excp.getMessage());
+        }
+    }
+
+    /** Store the encoding/decoding of MSG[START .. END-1] into OUT,
+     *  beginning at OUT[POS] and skipping blanks, and update the state of
+     *  the rotors accordingly.  Returns the number of chars stored, which
+     *  may be up to twice the number of letters if my alphabet has
+     *  characters outside the Basic Multilingual Plane.  OUT may be MSG
+     *  itself if POS <= START and all my characters are single chars. */
+    int convert(char[] msg, int start, int end, char[] out, int pos) {
+        int k = pos;
+        if (_alphabet.bmp()) {
+            for (int i = start; i < end; i += 1) {
+                if (msg[i] != ' ') {
+                    out[k] =
+                        _alphabet.toChar(convert(_alphabet.toInt(msg[i])));
+                    k += 1;
+                }
+            }
+            return k - pos;
+        }
+        for (int i = start; i < end; ) {
+            int c = Character.codePointAt(msg, i, end);
+            i += Character.charCount(c);
+            if (c != ' ') {
+                int e = _alphabet.toCodePoint(convert(_alphabet.toInt(c)));
+                k += Character.toChars(e, out, k);
+            }
         }
-        return converted;
+        return k - pos;
     }
 
 
@@ -166,16 +540,59 @@ class Machine {
 
 /** _plugboard. */
 
-    private Permutation _plugborad;
+    private Permutation _plugboard;
+
+/** The rotors available to me. */
+
+    private final Catalogue _allRotors;
+
+    /** Maximum number of substitutions to cache, or 0 for no cache. */
+
+    private int _cacheCapacity;
 
-/** _allRotors. */
+    /** Cached substitutions indexed directly by the rotor settings, when
+     *  all combinations of settings fit within _cacheCapacity. */
 
-    private Collection<Rotor> _allRotors;
+    private int[][] _directCache;
+
+    /** Cached substitutions keyed by the rotor settings, in least recently
+     *  used order, when they do not all fit. */
+
+    private LinkedHashMap<Long, int[]> _lruCache;
+
+    /** Smallest segment of a message converted as a separate task. */
+
+    static final int MIN_SEGMENT = 1 << 14;
+
+    /** Number of segments per worker thread that convertParallel aims
+     *  for, so that uneven progress balances out. */
+
+    private static final int SEGMENTS_PER_THREAD = 4;
 
     /** ArrayList. */
 
     private ArrayList<Rotor> _rotors;
 
+    /** My alphabet, rotors and plugboard, or null before insertRotors. */
+
+    private MachineSpec _spec;
+
+    /** _positions[K] is the setting of the rotor in slot K.  The rotors
+     *  themselves are shared and their own settings are not used. */
+
+    private int[] _positions;
+
+    /** The core: _core[C] is the result of passing C from the rightmost
+     *  rotor through all the others and the reflector and back, at
+     *  their current settings. */
+
+    private int[] _core;
+
+    /** True iff _core is up to date with my spec and the settings of all
+     *  rotors but the rightmost. */
+
+    private boolean _coreValid;
+
     /**
      *
      * @return getRotors.
@@ -0,0 +1,181 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable description of a configured Enigma machine: its alphabet,
+ *  the rotors in its slots with their ring settings, and its plugboard,
+ *  with all rotor tables compiled.  Ring settings are folded into the
+ *  tables, so they cost nothing as letters are converted.  Any number of
+ *  Machines, each holding only its own rotor settings, may be made from
+ *  one MachineSpec, and they may be used concurrently by different
+ *  threads.
+ *  @author Seongho Lee
+ */
+final class MachineSpec {
+
+    /** A machine with alphabet ALPHA and PAWLS pawls, whose slots hold
+     *  ROTORS (ROTORS[0] being the reflector) and whose plugboard is
+     *  PLUGBOARD (null for none).  Neither ROTORS nor the permutations of
+     *  its rotors and PLUGBOARD may be changed afterwards. */
+    MachineSpec(Alphabet alpha, int pawls, Rotor[] rotors,
+                Permutation plugboard) {
+        this(alpha, pawls, rotors, new int[rotors.length], plugboard);
+    }
+
+    /** As for MachineSpec(ALPHA, PAWLS, ROTORS, PLUGBOARD), but with the
+     *  rotor in slot K having ring setting RINGS[K]. */
+    MachineSpec(Alphabet alpha, int pawls, Rotor[] rotors, int[] rings,
+                Permutation plugboard) {
+        if (rotors.length < 2) {
+            throw error("a machine needs at least two rotor slots");
+        }
+        _alphabet = alpha;
+        _pawls = pawls;
+        _slots = rotors.clone();
+        _rings = rings.clone();
+        if (_rings.length != rotors.length) {
+            throw error("wrong number of ring settings");
+        }
+        _plugboard = plugboard;
+        _carries = new boolean[rotors.length];
+        _rotates = new boolean[rotors.length];
+        _forward = new int[rotors.length][][];
+        _backward = new int[rotors.length][][];
+        for (int i = 0; i < rotors.length; i += 1) {
+            if (rotors[i].size() != alpha.size()) {
+                throw error("rotor %s has the wrong alphabet",
+                            rotors[i].name());
+            }
+            if (_rings[i] < 0 || _rings[i] >= alpha.size()) {
+                throw error("bad ring setting for rotor %s",
+                            rotors[i].name());
+            }
+            rotors[i].compile();
+            _forward[i] = rotors[i].forwardRows(_rings[i]);
+            _backward[i] = rotors[i].backwardRows(_rings[i]);
+            _rotates[i] = rotors[i].rotates();
+            _carries[i] = i > 0 && rotors[i - 1].rotates();
+        }
+    }
+
+    /** Return a copy of me with plugboard PLUGBOARD instead of mine. */
+    MachineSpec withPlugboard(Permutation plugboard) {
+        return new MachineSpec(_alphabet, _pawls, _slots, _rings, plugboard);
+    }
+
+    /** Return a copy of me in which the rotor in slot K has ring setting
+     *  RINGS[K]. */
+    MachineSpec withRings(int[] rings) {
+        return new MachineSpec(_alphabet, _pawls, _slots, rings, _plugboard);
+    }
+
+    /** Return a new Machine using me, with all rotors at setting 0. */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _slots.length;
+    }
+
+    /** Return the number of pawls I have. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the rotor in slot K (0 being the reflector). */
+    Rotor rotor(int k) {
+        return _slots[k];
+    }
+
+    /** Return a catalogue of the rotors in my slots. */
+    Catalogue catalogue() {
+        Catalogue result = _catalogue;
+        if (result == null) {
+            result = _catalogue = new Catalogue(Arrays.asList(_slots));
+        }
+        return result;
+    }
+
+    /** Return the ring setting of the rotor in slot K. */
+    int ring(int k) {
+        return _rings[k];
+    }
+
+    /** Return the table of the rotor in slot K for its ring setting, whose
+     *  row S maps each P to its conversion forward through the rotor at
+     *  setting S, or null if the alphabet is too large for tables. */
+    int[][] forward(int k) {
+        return _forward[k];
+    }
+
+    /** Return the table of the rotor in slot K for its ring setting, whose
+     *  row S maps each E to its conversion backward through the rotor at
+     *  setting S, or null if the alphabet is too large for tables. */
+    int[][] backward(int k) {
+        return _backward[k];
+    }
+
+    /** Return the offset of the wiring of the rotor in slot K from the
+     *  letter shown at its setting POSN. */
+    int offset(int k, int posn) {
+        int offset = posn - _rings[k];
+        return offset < 0 ? offset + _alphabet.size() : offset;
+    }
+
+    /** Return true iff the rotor in slot K can move. */
+    boolean rotates(int k) {
+        return _rotates[k];
+    }
+
+    /** Return true iff the rotor in slot K - 1 has a pawl, so that the
+     *  notch of the rotor in slot K advances it. */
+    boolean carries(int k) {
+        return _carries[k];
+    }
+
+    /** Return my plugboard, or null if I have none. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The plugboard, or null. */
+    private final Permutation _plugboard;
+
+    /** The rotors in my slots, reflector first. */
+    private final Rotor[] _slots;
+
+    /** Catalogue of my slots, created when first needed.  Catalogues are
+     *  immutable, so it may be published without synchronization. */
+    private Catalogue _catalogue;
+
+    /** _rings[K] is the ring setting of the rotor in slot K. */
+    private final int[] _rings;
+
+    /** _forward[K] is forward(K). */
+    private final int[][][] _forward;
+
+    /** _backward[K] is backward(K). */
+    private final int[][][] _backward;
+
+    /** _rotates[I] is true iff the rotor in slot I can move. */
+    private final boolean[] _rotates;
+
+    /** _carries[I] is true iff the rotor in slot I - 1 has a pawl, so that
+     *  the notch of the rotor in slot I can advance it. */
+    private final boolean[] _carries;
+}
@@ -3,7 +3,8 @@ package enigma;
 
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Random;
+
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -19,7 +20,251 @@ import static enigma.TestUtils.*;
 
 public class MachineTest {
 
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a 5-slot, 3-pawl naval machine holding ROTORS, set to
+     *  SETTING, with plugboard PLUGBOARD. */
+    private static Machine naval(String[] rotors, String setting,
+                                 String plugboard) {
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation(plugboard, UPPER));
+        return machine;
+    }
+
+    /** A standard rotor order. */
+    private static final String[] ORDER = { "B", "Beta", "I", "II", "III" };
+
+    /** Return a long test message. */
+    private static String longMessage() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 20000; i += 1) {
+            msg.append(UPPER_STRING.charAt((i * 7 + i / 26) % 26));
+        }
+        return msg.toString();
+    }
+
+    /** Return a random permutation of 0 .. N-1 drawn from RANDOM. */
+    private static int[] shuffle(int n, Random random) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Return a 3-slot, 2-pawl machine over the N (even) characters
+     *  starting at code point FIRST, with randomly wired rotors. */
+    private static Machine large(int first, int n) {
+        int[] chars = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            chars[i] = first + i;
+        }
+        Alphabet alpha = new Alphabet(chars);
+        Random random = new Random(n);
+        int[] order = shuffle(n, random), reflect = new int[n];
+        for (int i = 0; i < n; i += 2) {
+            reflect[order[i]] = order[i + 1];
+            reflect[order[i + 1]] = order[i];
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(alpha, reflect)));
+        rotors.add(new MovingRotor("I",
+                                   new Permutation(alpha, shuffle(n, random)),
+                                   ""));
+        rotors.add(new MovingRotor("II",
+                                   new Permutation(alpha, shuffle(n, random)),
+                                   new String(chars, n / 2, 1)));
+        Machine machine = new Machine(alpha, 3, 2, rotors);
+        machine.insertRotors(new String[] { "R", "I", "II" });
+        return machine;
+    }
+
+    /** Check that a machine over N characters from code point FIRST
+     *  inverts itself on a long message, whether converting strings or
+     *  char arrays. */
+    private static void checkLarge(int first, int n) {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 3 * n; i += 1) {
+            msg.appendCodePoint(first + (i * 7 + i / n) % n);
+        }
+        String coded = large(first, n).convert(msg.toString());
+        assertEquals(msg.length(), coded.length());
+        assertEquals(msg.toString(), large(first, n).convert(coded));
+        char[] buf = new char[2 * msg.length()];
+        int k = large(first, n).convert(msg.toString().toCharArray(), 0,
+                                        msg.length(), buf, 0);
+        assertEquals(coded, new String(buf, 0, k));
+        assertEquals(coded, large(first, n).convertParallel(msg.toString()));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkLargeAlphabets() {
+        checkLarge(0x4e00, 5000);
+        checkLarge(0x20000, 5000);
+    }
+
+    @Test
+    public void checkConvert() {
+        assertEquals("ILBDAAMTAZ",
+                     naval(ORDER, "AAAA", "").convert("HELLO WORLD"));
+        assertEquals("IHBDQQMTQZ",
+                     naval(ORDER, "AAAA", "(AQ) (EP)")
+                     .convert("HELLO WORLD"));
+    }
+
+    @Test
+    public void checkInverse() {
+        String msg = longMessage();
+        String coded = naval(ORDER, "AXLE", "(HQ) (EX) (IP) (TR) (BY)")
+            .convert(msg);
+        assertEquals(msg, naval(ORDER, "AXLE", "(HQ) (EX) (IP) (TR) (BY)")
+                     .convert(coded));
+    }
+
+    @Test
+    public void checkDoubleStep() {
+        Machine machine = naval(ORDER, "AADU", "");
+        String[] expected = { "AADV", "AAEW", "ABFX", "ABFY" };
+        for (String setting : expected) {
+            machine.convert(0);
+            assertEquals(setting, settings(machine));
+        }
+    }
+
+    /** Return the settings of the non-reflector rotors of MACHINE. */
+    private static String settings(Machine machine) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            result.append(UPPER.toChar(machine.setting(i)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkRings() {
+        String msg = longMessage().substring(0, 40);
+        Machine plain = naval(ORDER, "AAAA", "(AQ) (EP)");
+        Machine ringed = naval(ORDER, "AAAB", "(AQ) (EP)");
+        ringed.setRings("AAAB");
+        String expected = plain.convert(msg), coded = ringed.convert(msg);
+        assertEquals(expected.substring(0, 20), coded.substring(0, 20));
+        assertNotEquals(expected, coded);
+        Machine inverse = naval(ORDER, "AAAB", "(AQ) (EP)");
+        inverse.setRings("AAAB");
+        assertEquals(msg, inverse.convert(coded));
+        Machine reset = naval(ORDER, "AAAA", "(AQ) (EP)");
+        reset.setRings("ZZZZ");
+        reset.insertRotors(ORDER);
+        assertEquals(expected, reset.convert(msg));
+
+        Rotor rotor = navalRotors().iterator().next();
+        int expectedForward = rotor.convertForward(3);
+        rotor.set(5);
+        rotor.setRing(5);
+        assertEquals(expectedForward, rotor.convertForward(3));
+    }
+
+    @Test
+    public void checkSeek() {
+        String[] order = { "B", "Beta", "VI", "II", "VIII" };
+        for (int n : new int[] { 0, 1, 7, 26, 650, 12345, 100000 }) {
+            Machine stepped = naval(order, "AZDK", "");
+            for (int i = 0; i < n; i += 1) {
+                stepped.convert(0);
+            }
+            Machine sought = naval(order, "AZDK", "");
+            sought.seek(n);
+            assertEquals("seek " + n, settings(stepped), settings(sought));
+            assertEquals("after seek " + n, stepped.convert("HELLO"),
+                         sought.convert("HELLO"));
+        }
+    }
+
+    @Test
+    public void checkParallel() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 10; i += 1) {
+            msg.append(longMessage()).append(' ');
+        }
+        Machine sequential = naval(ORDER, "AXLE", "(YF) (ZH)");
+        Machine parallel = naval(ORDER, "AXLE", "(YF) (ZH)");
+        assertEquals(sequential.convert(msg.toString()),
+                     parallel.convertParallel(msg.toString()));
+        assertEquals(settings(sequential), settings(parallel));
+    }
+
+    @Test
+    public void checkSharedSpec() {
+        MachineSpec spec = naval(ORDER, "AAAA", "(AQ) (EP)").spec();
+        Machine first = spec.newMachine(), second = spec.newMachine();
+        first.setRotors("AAAA");
+        second.setRotors("AXLE");
+        String msg = longMessage();
+        String expected = naval(ORDER, "AXLE", "(AQ) (EP)").convert(msg);
+        assertEquals("IHBDQQMTQZ", first.convert("HELLOWORLD"));
+        assertEquals(expected, second.convert(msg));
+        assertEquals("IHBDQQMTQZ",
+                     spec.newMachine().convert("HELLOWORLD"));
+    }
+
+    @Test
+    public void checkStreaming() {
+        String msg = longMessage();
+        String expected = naval(ORDER, "AXLE", "(YF) (ZH)").convert(msg);
+        StringBuilder out = new StringBuilder();
+        naval(ORDER, "AXLE", "(YF) (ZH)").convert(msg, out);
+        assertEquals(expected, out.toString());
+
+        char[] buf = ("  " + msg.substring(0, 7) + " " + msg.substring(7))
+            .toCharArray();
+        int n = naval(ORDER, "AXLE", "(YF) (ZH)")
+            .convert(buf, 0, buf.length, buf, 0);
+        assertEquals(expected, new String(buf, 0, n));
+    }
 
+    @Test
+    public void checkCore() {
+        Machine machine = naval(new String[] { "B", "Gamma", "VI", "VII",
+                                               "VIII" }, "AZDK", "(AQ) (EP)");
+        machine.setRings("BCDE");
+        MachineSpec spec = machine.spec();
+        Permutation plugboard = spec.plugboard();
+        for (int i = 0; i < 20000; i += 1) {
+            int c = (i * 7 + i / 26) % 26;
+            int result = machine.convert(c);
+            int expected = plugboard.permute(c);
+            for (int k = 4; k > 0; k -= 1) {
+                expected = spec.rotor(k).convertForward(
+                    expected, spec.offset(k, machine.setting(k)));
+            }
+            for (int k = 0; k < 5; k += 1) {
+                expected = spec.rotor(k).convertBackward(
+                    expected, spec.offset(k, machine.setting(k)));
+            }
+            assertEquals("letter " + i, plugboard.invert(expected), result);
+        }
+    }
 
+    @Test
+    public void checkCache() {
+        String msg = longMessage();
+        String expected = naval(ORDER, "AXLE", "(YF) (ZH)").convert(msg);
+        for (int capacity : new int[] { 1, 100, 1000000 }) {
+            Machine machine = naval(ORDER, "AXLE", "(YF) (ZH)");
+            machine.setCacheCapacity(capacity);
+            assertEquals("capacity " + capacity, expected,
+                         machine.convert(msg));
+        }
+    }
 
 }
@@ -1,12 +1,17 @@
 package enigma;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
-
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import static enigma.EnigmaException.*;
 
@@ -23,7 +28,25 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Alternatively, ARGS may be "-m CONFIG INPUT OUTPUT", in which case
+     *  INPUT and OUTPUT are files that are processed through memory maps,
+     *  so that files larger than the heap may be converted.  This requires
+     *  an alphabet of ASCII characters.
+     *
+     *  Finally, ARGS may be "-c CONFIG OUTPUT", in which case the
+     *  configuration in CONFIG is written to OUTPUT in the binary form
+     *  described in BinaryConfig.  A binary configuration may be used
+     *  wherever a configuration file is expected, and loads without any
+     *  parsing.
+     *
+     *  ARGS may also be "-s CONFIG ADDRESS", in which case messages are
+     *  converted by a Server listening at ADDRESS: a port number on the
+     *  loopback interface, or the path of a Unix-domain socket.  The
+     *  server reloads CONFIG whenever the file changes, runs until the
+     *  process is interrupted, and then reports its throughput and
+     *  latencies on the standard error. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,205 +59,470 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        if (args.length > 0 && args[0].equals("-c")) {
+            if (args.length != 3) {
+                throw error("-c requires configuration and output files");
+            }
+            _config = getReader(args[1]);
+            _configName = args[1];
+            _binaryOutput = getPath(args[2]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("-s")) {
+            if (args.length != 3) {
+                throw error("-s requires a configuration file and an "
+                            + "address");
+            }
+            _configName = args[1];
+            _serverAddress = Server.address(args[2]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("-m")) {
+            if (args.length != 4) {
+                throw error("-m requires configuration, input, and output "
+                            + "files");
+            }
+            _config = getReader(args[1]);
+            _configName = args[1];
+            _mappedInput = getPath(args[2]);
+            _mappedOutput = getPath(args[3]);
+            return;
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = getReader(args[0]);
+        _configName = args[0];
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getReader(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = Channels.newReader(Channels.newChannel(System.in),
+                                        Charset.defaultCharset().newDecoder(),
+                                        -1);
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _output = getWriter(args[2]);
         } else {
-            _output = System.out;
+            _output = Channels.newWriter(Channels.newChannel(System.out),
+                                         Charset.defaultCharset().newEncoder(),
+                                         -1);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return the path of the file named NAME. */
+    private static Path getPath(String name) {
         try {
-            return new Scanner(new File(name));
-        } catch (IOException excp) {
+            return Paths.get(name);
+        } catch (InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a Reader on a channel reading from the file named NAME. */
+    private static Reader getReader(String name) {
         try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
+            return Channels.newReader(FileChannel.open(Paths.get(name)),
+                                      Charset.defaultCharset().newDecoder(),
+                                      -1);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a Writer on a channel writing to the file named NAME. */
+    private Writer getWriter(String name) {
+        try {
+            FileChannel channel =
+                FileChannel.open(Paths.get(name), StandardOpenOption.WRITE,
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING);
+            return Channels.newWriter(channel,
+                                      Charset.defaultCharset().newEncoder(),
+                                      -1);
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  Input is read in large blocks; each message
+     *  line is converted as it is scanned, and output is collected in
+     *  _outBuf and written out a block at a time. */
     private void process() {
-        String s1, s2 = "";
-        String decode;
+        if (_binaryOutput != null) {
+            BinaryConfig.write(readConfig(), _binaryOutput);
+            return;
+        }
+        if (_mappedInput != null) {
+            processMapped();
+            return;
+        }
+        if (_serverAddress != null) {
+            serve();
+            return;
+        }
+        try {
+            try {
+                Machine machine = readConfig();
+                char[] buf = new char[BUFFER_SIZE];
+                _converted = new char[2 * BUFFER_SIZE];
+                _outBuf = new char[BUFFER_SIZE];
+                StringBuilder settings = null;
+                boolean lineStart = true, configured = false;
+                int carry = 0;
+                for (int n = _input.read(buf); n >= 0;
+                     n = _input.read(buf, carry, buf.length - carry)) {
+                    n += carry;
+                    carry = 0;
+                    if (Character.isHighSurrogate(buf[n - 1])) {
+                        carry = 1;
+                        n -= 1;
+                    }
+                    int start = 0;
+                    for (int i = 0; i <= n; i += 1) {
+                        boolean eol = i == n || buf[i] == '\n';
+                        if (i < n && lineStart) {
+                            lineStart = false;
+                            _group = 0;
+                            if (buf[i] == '*') {
+                                settings = new StringBuilder();
+                            } else if (!configured && buf[i] != '\n') {
+                                throw error("message without a "
+                                            + "configuration");
+                            }
+                        }
+                        if (!eol) {
+                            continue;
+                        }
+                        if (settings != null) {
+                            settings.append(buf, start, i - start);
+                        } else if (!lineStart) {
+                            convertSegment(machine, buf, start, i);
+                        }
+                        if (i < n) {
+                            if (settings != null) {
+                                setUp(machine, settings.toString());
+                                configured = true;
+                                settings = null;
+                            } else {
+                                putChar('\n');
+                            }
+                            lineStart = true;
+                        }
+                        start = i + 1;
+                    }
+                    if (carry > 0) {
+                        buf[0] = buf[n];
+                    }
+                }
+                if (carry > 0) {
+                    throw error("unpaired surrogate at end of input");
+                }
+                if (settings != null) {
+                    setUp(machine, settings.toString());
+                } else if (!lineStart) {
+                    putChar('\n');
+                }
+            } finally {
+                try {
+                    flushOutput();
+                    _output.flush();
+                } finally {
+                    _input.close();
+                    _output.close();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Configure an Enigma machine from _config and apply it to the
+     *  messages in the file _mappedInput, writing the results to the file
+     *  _mappedOutput.  Both files are accessed through memory maps of at
+     *  most MAP_WINDOW bytes at a time, and characters are converted
+     *  directly from one map to the other. */
+    private void processMapped() {
         Machine machine = readConfig();
-        boolean find = true;
-        int count = 1;
-        while (_input.hasNextLine()) {
-            find = false;
-            String settings = _input.nextLine();
-            if (_input.hasNextLine()) {
-                s1 = s2;
-            } else {
-                return;
+        for (int i = 0; i < _alphabet.size(); i += 1) {
+            if (_alphabet.toCodePoint(i) > MAX_ASCII) {
+                throw error("-m requires an ASCII alphabet");
             }
-            if (settings.startsWith("*")) {
-                if (count != 1) {
-                    machine.getRotors().clear();
+        }
+        try (FileChannel in = FileChannel.open(_mappedInput,
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(_mappedOutput,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption
+                                                .TRUNCATE_EXISTING)) {
+            _mapOut = out;
+            _mapPos = 0;
+            _mapBuf = null;
+            long size = in.size();
+            _mapLimit = size + size / 5 + 1;
+            try {
+                StringBuilder settings = null;
+                boolean lineStart = true, configured = false;
+                int group = 0;
+                for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                    MappedByteBuffer src =
+                        in.map(FileChannel.MapMode.READ_ONLY, pos,
+                               Math.min(MAP_WINDOW, size - pos));
+                    while (src.hasRemaining()) {
+                        char c = (char) (src.get() & 0xff);
+                        if (lineStart) {
+                            lineStart = false;
+                            group = 0;
+                            if (c == '*') {
+                                settings = new StringBuilder();
+                            } else if (!configured && c != '\n') {
+                                throw error("message without a configuration");
+                            }
+                        }
+                        if (c == '\n') {
+                            if (settings != null) {
+                                setUp(machine, settings.toString());
+                                configured = true;
+                                settings = null;
+                            } else {
+                                putByte(c);
+                            }
+                            lineStart = true;
+                        } else if (settings != null) {
+                            settings.append(c);
+                        } else if (!Character.isWhitespace(c)) {
+                            if (group == 5) {
+                                putByte(' ');
+                                group = 0;
+                            }
+                            putByte(_alphabet.toChar(machine.convert(
+                                        _alphabet.toInt(c))));
+                            group += 1;
+                        }
+                    }
                 }
-                setUp(machine, settings);
-            } else {
-                printMessageLine(machine.convert(settings));
+                if (settings != null) {
+                    setUp(machine, settings.toString());
+                } else if (!lineStart) {
+                    putByte('\n');
+                }
+            } finally {
+                if (_mapBuf != null) {
+                    _mapPos += _mapBuf.position();
+                    _mapBuf = null;
+                }
+                out.truncate(_mapPos);
             }
-            count++;
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
         }
-        while (_input.hasNextLine()) {
-            if (s2.startsWith("*")) {
-                s1 = s2;
+    }
+
+    /** Configure a server from _config and run it at _serverAddress until
+     *  the process is interrupted, reloading the configuration file when
+     *  it changes, then close it and print its report. */
+    private void serve() {
+        Server server = new Server(readConfig(_configName), _serverAddress);
+        server.watch(_configName, System.err);
+        Thread shutdown = new Thread(() -> {
+            server.close();
+            server.report(System.err);
+        });
+        Runtime.getRuntime().addShutdownHook(shutdown);
+        System.err.printf("enigma server listening at %s%n",
+                          server.address());
+        server.serve(System.err);
+    }
+
+    /** Append C to the memory-mapped output file, mapping the next
+     *  MAP_WINDOW bytes of the file, or fewer if the output cannot reach
+     *  that far, when the current map is full. */
+    private void putByte(char c) throws IOException {
+        if (_mapBuf == null || !_mapBuf.hasRemaining()) {
+            if (_mapBuf != null) {
+                _mapPos += _mapBuf.position();
             }
+            _mapBuf = _mapOut.map(FileChannel.MapMode.READ_WRITE, _mapPos,
+                                  Math.min(MAP_WINDOW, _mapLimit - _mapPos));
         }
-        if (find) {
-            throw new EnigmaException("Put other input");
+        _mapBuf.put((byte) c);
+    }
+
+    /** Convert the message characters in BUF[START .. END-1] with M,
+     *  which continue the current message line, and append them to the
+     *  output in groups of five. */
+    private void convertSegment(Machine M, char[] buf, int start, int end)
+        throws IOException {
+        for (int i = start; i < end; i += 1) {
+            if (Character.isWhitespace(buf[i])) {
+                buf[i] = ' ';
+            }
+        }
+        int n = M.convert(buf, start, end, _converted, 0);
+        putGrouped(_converted, 0, n);
+    }
+
+    /** Append CHARS[START .. END-1] to the output, inserting a blank
+     *  after every five characters of the current line.  A surrogate pair
+     *  counts as one character. */
+    private void putGrouped(char[] chars, int start, int end)
+        throws IOException {
+        for (int i = start; i < end; i += 1) {
+            if (Character.isLowSurrogate(chars[i])) {
+                putChar(chars[i]);
+                continue;
+            }
+            if (_group == 5) {
+                putChar(' ');
+                _group = 0;
+            }
+            putChar(chars[i]);
+            _group += 1;
+        }
+    }
+
+    /** Append C to the output buffer, writing the buffer out if full. */
+    private void putChar(char c) throws IOException {
+        if (_outLen == _outBuf.length) {
+            flushOutput();
+        }
+        _outBuf[_outLen] = c;
+        _outLen += 1;
+    }
+
+    /** Write the contents of the output buffer to _output. */
+    private void flushOutput() throws IOException {
+        if (_outLen > 0) {
+            _output.write(_outBuf, 0, _outLen);
+            _outLen = 0;
         }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+     *  file _config, which may be textual or binary, with all the rotors it
+     *  describes available. */
+    Machine readConfig() {
         try {
-            int count = 0;
-            _numRotors = _config.nextInt();
-            _alphabet = new Alphabet(_config.nextLine());
-            _allRotors = new ArrayList<>();
-            _pawls = _config.nextInt();
-            while (_config.hasNextLine() == true) {
-                String attempt = _config.nextLine();
-                if (attempt.length() == 0) {
-                    attempt = _config.nextLine();
-                }
-                Scanner scanTemp = new Scanner(attempt);
-                String temp2 = scanTemp.next();
-                if (temp2.startsWith("(")) {
-                    String cycles = temp2;
-                    while (scanTemp.hasNext()) {
-                        cycles += scanTemp.next();
-                    }
-                    _allRotors.get(count - 1).permutation().addCycle(cycles);
-
-                } else {
-                    _allRotors.add(readRotor(attempt));
-                    count += 1;
-                }
+            Machine machine = readConfig(_configName, _config);
+            _alphabet = machine.alphabet();
+            _numRotors = machine.numRotors();
+            _pawls = machine.numPawls();
+            return machine;
+        } finally {
+            try {
+                _config.close();
+            } catch (IOException excp) {
+                /* Ignore: the configuration has been read. */
             }
-            return new Machine(_alphabet, _numRotors, _pawls, _allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("cut configuration file");
         }
     }
 
-    /** Return a rotor, reading its description from _config.
-     * @param temp*/
-    private Rotor readRotor(String temp) {
+    /** Return an Enigma machine configured from the contents of the
+     *  configuration file named NAME, which may be textual or binary, with
+     *  all the rotors it describes available. */
+    static Machine readConfig(String name) {
+        Reader config = getReader(name);
         try {
-            String name = "", notches = "", cycles = "";
-            char moving = 0;
-            String x = temp;
-            Scanner allow = new Scanner(x);
-            name = allow.next();
-            String tempppt = allow.next();
-            notches = tempppt.substring(1);
-            moving = tempppt.charAt(0);
-
-            while (allow.hasNext()) {
-                cycles = cycles + allow.next();
-            }
-            if (moving == 'M') {
-                return new MovingRotor(name, new Permutation(cycles, _alphabet), notches);
-            } else if (moving == 'R') {
-                return new Reflector(name, new Permutation(cycles, _alphabet));
-            } else{
-                return new FixedRotor(name, new Permutation(cycles, _alphabet));
+            return readConfig(name, config);
+        } finally {
+            try {
+                config.close();
+            } catch (IOException excp) {
+                /* Ignore: the configuration has been read. */
             }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
         }
     }
 
+    /** Return an Enigma machine configured from the configuration file
+     *  named NAME, whose contents, if it is not binary, are read from
+     *  CONFIG. */
+    private static Machine readConfig(String name, Reader config) {
+        Path path = getPath(name);
+        if (BinaryConfig.isBinary(path)) {
+            return BinaryConfig.read(path);
+        }
+        return new ConfigReader(config, name).read();
+    }
+
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment, optionally
+     *  followed by ring settings in the same form as the rotor settings,
+     *  before any plugboard cycles.  Setting lines seen recently are
+     *  neither parsed nor compiled again. */
     private void setUp(Machine M, String settings) {
-        String[] Ary = settings.split("[ ]");
-        String[] inserting = new String[_numRotors];
-        Scanner scan = new Scanner(settings);
-        int numRotors = M.numRotors();
-        for(int i = 1; i < _numRotors + 1; i = i + 1){
-            inserting[i - 1] = Ary[i];
-            numRotors++;
-        }
-        _mainMachine = new Machine(_alphabet,
-                M.numRotors(), M.numPawls(), _allRotors);
-        _mainMachine.setRotors(scan.next());
-        String setting = Ary[_numRotors + 1];
-        String plugBoard = "";
-        for(int i = _numRotors + 2; i < Ary.length; i= i + 1) {
-            plugBoard += Ary[i];
-        }
-        M.insertRotors(inserting);
-        M.setPlugboard(new Permutation(plugBoard, _alphabet));
-        M.setRotors(setting);
-    }
-
-    /**
-     * A function to find a length.
-     */
-    private void length() {
-        int i = 0;
-        while (_config.hasNextLine()) {
-            _config.nextLine();
-            i += 1;
-        }
-        _configlength = i;
-    }
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        if (msg.equals("")) {
-            _output.println();
-        }
-        for (int i = 0; i < msg.length(); i += 1) {
-            if (i % 5 == 0 && i != 0) {
-                _output.print(" ");
-            }
-            _output.print(msg.charAt(i));
-            int dan = msg.length() - i;
+        if (_settingsCache == null) {
+            _settingsCache = new SettingsCache(M, SETTINGS_CACHE_SIZE);
         }
-        _output.println();
+        _settingsCache.get(settings).apply(M);
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private Reader _config;
+
+    /** Name of the configuration file. */
+    private String _configName;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private Writer _output;
+
+    /** Size of the input and output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Output not yet written to _output. */
+    private char[] _outBuf;
+
+    /** Number of characters in _outBuf. */
+    private int _outLen;
+
+    /** Scratch space for converted message characters. */
+    private char[] _converted;
+
+    /** Input file for memory-mapped processing, or null. */
+    private Path _mappedInput;
+
+    /** Output file for memory-mapped processing, or null. */
+    private Path _mappedOutput;
+
+    /** Output file for a binary configuration, or null. */
+    private Path _binaryOutput;
+
+    /** Address at which to run a server, or null. */
+    private SocketAddress _serverAddress;
+
+    /** Largest portion of a file mapped at once. */
+    private static final long MAP_WINDOW = 1L << 28;
+
+    /** Largest character code that is a single byte in the output. */
+    private static final char MAX_ASCII = 0x7f;
+
+    /** Channel of the memory-mapped output file. */
+    private FileChannel _mapOut;
+
+    /** Current map of the output file. */
+    private MappedByteBuffer _mapBuf;
+
+    /** File position of the start of _mapBuf. */
+    private long _mapPos;
+
+    /** Bound on the size of the output file: each input byte yields at
+     *  most one output byte, plus a space for every five letters and a
+     *  final newline. */
+    private long _mapLimit;
+
+    /** Number of characters in the current output group. */
+    private int _group;
 
     /** _pawls. */
     private int _pawls;
@@ -242,14 +530,9 @@ public final class Main {
     /** _numRotors. */
     private int _numRotors;
 
-    /** The length of config. */
-    private int _configlength;
-
-    /** _allRotors. */
-    private ArrayList<Rotor> _allRotors;
+    /** Compiled setting lines, created by the first setUp. */
+    private SettingsCache _settingsCache;
 
-    /**
-     * Type and notches of current rotor.
-     */
-    private Machine _mainMachine;
+    /** Number of setting lines kept in _settingsCache. */
+    private static final int SETTINGS_CACHE_SIZE = 1024;
 }
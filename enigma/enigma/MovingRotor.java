@@ -7,8 +7,12 @@ import static enigma.EnigmaException.*;
  */
 class MovingRotor extends Rotor {
 
-    /** _notches. */
-    private String _notches;
+    /** Bit S of _notchBits[S / 64] is set iff setting S is a notch. */
+    private long[] _notchBits;
+
+    /** _notchDistance[S] is the number of advances from setting S to the
+     *  next notch, or -1 if I have none. */
+    private int[] _notchDistance;
 
     /** A rotor named NAME whose permutation in its default setting is
      *  PERM, and whose notches are at the positions indicated in NOTCHES.
@@ -17,7 +21,28 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        _notchBits = new long[(size() + 63) >>> 6];
+        for (int i = 0; i < notches.length(); ) {
+            int c = notches.codePointAt(i);
+            i += Character.charCount(c);
+            if (!alphabet().contains(c)) {
+                throw error("notch %c of rotor %s is not in the alphabet",
+                            c, name);
+            }
+            int s = alphabet().toInt(c);
+            _notchBits[s >>> 6] |= 1L << s;
+        }
+        _notchDistance = new int[size()];
+        int next = -1;
+        for (int k = 2 * size() - 1; k >= 0; k -= 1) {
+            int s = k % size();
+            if (atNotch(s)) {
+                next = k;
+            }
+            if (k < size()) {
+                _notchDistance[s] = next < 0 ? -1 : next - k;
+            }
+        }
     }
 
     @Override
@@ -27,17 +52,17 @@ class MovingRotor extends Rotor {
 
     @Override
     void advance() {
-        this.set((this.setting() + 1) % size());
+        int s = setting() + 1;
+        set(s == size() ? 0 : s);
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (_notches.contains
-                    (Character.toString(alphabet().toChar(setting())))) {
-                return true;
-            }
-        }
-        return false;
+    boolean atNotch(int posn) {
+        return (_notchBits[posn >>> 6] & (1L << posn)) != 0;
+    }
+
+    @Override
+    int notchDistance(int posn) {
+        return _notchDistance[posn];
     }
 }
@@ -80,4 +80,16 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorAddCycle() {
+        rotor = new MovingRotor("I", new Permutation("(AELTPHQXRU) (BKNW)",
+                                                     UPPER), "");
+        rotor.set(1);
+        rotor.convertForward(0);
+        for (String cycle : new String[] { "CMOY", "DFG", "IV", "JZ" }) {
+            rotor.permutation().addCycle(cycle);
+        }
+        checkRotor("Rotor I extended", UPPER_STRING, NAVALB_MAP.get("I"));
+    }
+
 }
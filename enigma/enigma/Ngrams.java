@@ -0,0 +1,191 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A table of log probabilities of the N-letter sequences (N-grams) of some
+ *  language, over an alphabet, used to score candidate plaintexts.  N-grams
+ *  never seen are given a small floor probability.  Scoring allocates
+ *  nothing and may be done by any number of threads at once.
+ *  @author Seongho Lee
+ */
+final class Ngrams {
+
+    /** Ngrams over ALPHA read from COUNTS, which contains lines of the form
+     *  "NGRAM COUNT", all NGRAMs having the same length.  Blank lines are
+     *  ignored. */
+    Ngrams(Alphabet alpha, Reader counts) {
+        _alphabet = alpha;
+        BufferedReader input = new BufferedReader(counts);
+        int n = -1;
+        long[] table = null;
+        try {
+            int lineNum = 0;
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                lineNum += 1;
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 1 && fields[0].isEmpty()) {
+                    continue;
+                }
+                if (fields.length != 2) {
+                    throw error("line %d: expected an n-gram and a count",
+                                lineNum);
+                }
+                if (table == null) {
+                    n = fields[0].length();
+                    table = new long[tableSize(alpha, n)];
+                } else if (fields[0].length() != n) {
+                    throw error("line %d: n-grams of different lengths",
+                                lineNum);
+                }
+                long count;
+                try {
+                    count = Long.parseLong(fields[1]);
+                } catch (NumberFormatException excp) {
+                    count = -1;
+                }
+                if (count < 0) {
+                    throw error("line %d: bad count %s", lineNum, fields[1]);
+                }
+                table[index(fields[0])] += count;
+            }
+        } catch (IOException excp) {
+            throw error("could not read n-grams: %s", excp.getMessage());
+        }
+        if (table == null) {
+            throw error("no n-grams");
+        }
+        _n = n;
+        _logs = logProbabilities(table);
+        _span = _logs.length / alpha.size();
+    }
+
+    /** Ngrams of length N over ALPHA counted in TEXT, whose characters
+     *  not in ALPHA are ignored. */
+    Ngrams(Alphabet alpha, int n, CharSequence text) {
+        _alphabet = alpha;
+        _n = n;
+        long[] table = new long[tableSize(alpha, n)];
+        int span = table.length / alpha.size();
+        int index = 0, run = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!alpha.contains(c)) {
+                continue;
+            }
+            index = index % span * alpha.size() + alpha.toInt(c);
+            run += 1;
+            if (run >= n) {
+                table[index] += 1;
+            }
+        }
+        _logs = logProbabilities(table);
+        _span = span;
+    }
+
+    /** Return the number of entries in a table of the N-grams over ALPHA,
+     *  which must be reasonably small. */
+    private static int tableSize(Alphabet alpha, int n) {
+        if (n <= 0) {
+            throw error("n-grams must have positive length");
+        }
+        long size = 1;
+        for (int i = 0; i < n; i += 1) {
+            size *= alpha.size();
+            if (size > MAX_TABLE) {
+                throw error("too many %d-grams", n);
+            }
+        }
+        return (int) size;
+    }
+
+    /** Return the index of NGRAM in my table. */
+    private int index(String ngram) {
+        int result = 0;
+        for (int i = 0; i < ngram.length(); i += 1) {
+            result = result * _alphabet.size()
+                + _alphabet.toInt(ngram.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the log probabilities corresponding to COUNTS. */
+    private static float[] logProbabilities(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams");
+        }
+        float[] result = new float[counts.length];
+        double floor = Math.log(FLOOR / total);
+        for (int i = 0; i < counts.length; i += 1) {
+            result[i] = counts[i] == 0 ? (float) floor
+                : (float) Math.log((double) counts[i] / total);
+        }
+        return result;
+    }
+
+    /** Return the length of my n-grams. */
+    int length() {
+        return _n;
+    }
+
+    /** Return the log probability of the text consisting of the first
+     *  LENGTH alphabet indices in TEXT, as the sum of those of its
+     *  n-grams. */
+    double score(int[] text, int length) {
+        float[] logs = _logs;
+        int size = _alphabet.size(), span = _span;
+        int index = 0;
+        double result = 0;
+        for (int i = 0; i < length; i += 1) {
+            index = index % span * size + text[i];
+            if (i >= _n - 1) {
+                result += logs[index];
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of coincidence of the first LENGTH alphabet
+     *  indices in TEXT: the probability that two of them chosen at random
+     *  are equal.  COUNTS, at least as long as the alphabet, is used as
+     *  scratch space. */
+    static double indexOfCoincidence(int[] text, int length, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < length; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long sum = 0;
+        for (int count : counts) {
+            sum += (long) count * (count - 1);
+        }
+        return length < 2 ? 0 : (double) sum / ((long) length * (length - 1));
+    }
+
+    /** Largest number of entries in a table. */
+    private static final int MAX_TABLE = 1 << 24;
+
+    /** Count assumed for unseen n-grams. */
+    private static final double FLOOR = 0.01;
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Number of (N-1)-grams. */
+    private final int _span;
+
+    /** Log probability of each n-gram, indexed by its letters' indices as
+     *  the digits of a number in base alphabet size. */
+    private final float[] _logs;
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -15,26 +17,95 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        cycles = cycles.replace("(", " ");
-        cycles = cycles.trim();
-        cycles = cycles.replace(")", " ");
-        _cycles = cycles.split(" ");
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        _cycled = new boolean[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = _inverse[i] = i;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            int c = cycles.codePointAt(i);
+            if (Character.isSupplementaryCodePoint(c)) {
+                i += 1;
+                if (start < 0) {
+                    throw error("'%c' is outside any cycle in %s", c, cycles);
+                }
+            } else if (c == '(') {
+                if (start >= 0) {
+                    throw error("nested '(' in cycles %s", cycles);
+                }
+                start = i + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw error("unmatched ')' in cycles %s", cycles);
+                }
+                addCycle(cycles.substring(start, i));
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(c)) {
+                throw error("'%c' is outside any cycle in %s", c, cycles);
+            }
+        }
+        if (start >= 0) {
+            throw error("unterminated cycle in %s", cycles);
+        }
+    }
+
+    /** Set this Permutation to the one taking each index I of a character
+     *  in ALPHABET to FORWARD[I], which must be a permutation of the
+     *  indices.  Every character is then accounted for, so no cycle may be
+     *  added to it. */
+    Permutation(Alphabet alphabet, int[] forward) {
+        if (forward.length != alphabet.size()) {
+            throw error("permutation has the wrong size");
+        }
+        _alphabet = alphabet;
+        _forward = forward.clone();
+        _inverse = new int[forward.length];
+        _cycled = new boolean[forward.length];
+        Arrays.fill(_inverse, -1);
+        Arrays.fill(_cycled, true);
+        for (int i = 0; i < forward.length; i += 1) {
+            int k = forward[i];
+            if (k < 0 || k >= forward.length || _inverse[k] >= 0) {
+                throw error("not a permutation");
+            }
+            _inverse[k] = i;
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     public void addCycle(String cycle) {
-        String[] newCycle = new String[_cycles.length + 1];
-        for (int i = 0; i < _cycles.length; i++) {
-            newCycle[i] = _cycles[i];
+        int[] members = new int[cycle.length()];
+        int n = 0;
+        for (int i = 0; i < cycle.length(); ) {
+            int c = cycle.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int k = _alphabet.toInt(c);
+            if (_cycled[k]) {
+                throw error("'%c' appears in more than one cycle", c);
+            }
+            _cycled[k] = true;
+            members[n] = k;
+            n += 1;
         }
-        newCycle[_cycles.length + 1] = cycle;
-        _cycles = newCycle;
-        // FIXME
+        for (int i = 0; i < n; i += 1) {
+            int from = members[i], to = members[(i + 1) % n];
+            _forward[from] = to;
+            _inverse[to] = from;
+        }
+        _version += 1;
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < size()) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -44,58 +115,19 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        p = wrap(p);
-        char c = _alphabet.toChar(p);
-        char permuted = 0;
-        boolean check = false;
-        for (String str : _cycles) {
-            for (int i = 0; i < str.length(); i++) {
-                int size = str.length();
-                if (c == str.charAt(i)) {
-                    int adjust = i + 1;
-                    if (i + 1 > size - 1) {
-                        adjust = (i + 1) % size;
-                    }
-                    permuted = str.charAt(adjust);
-                    check = true;
-                }
-            }
-        }
-        if (!check) {
-            return p;
-        }
-        return _alphabet.toInt(permuted);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        c = wrap(c);
-        char cc = _alphabet.toChar(c);
-        char permuted = 0;
-        boolean check = false;
-        for (String str : _cycles) {
-            for (int i = 0; i < str.length(); i++) {
-                if (cc == str.charAt(i)) {
-                    int adjust = i - 1;
-                    if (adjust < 0) {
-                        adjust += str.length();
-                    }
-                    permuted = str.charAt(adjust);
-                    check = true;
-                }
-            }
-        }
-        if (!check) {
-            return c;
-        }
-        return _alphabet.toInt(permuted);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -109,6 +141,12 @@ class Permutation {
         return _alphabet.toChar(invert(_alphabet.toInt(c)));
     }
 
+    /** Return a count that changes whenever a cycle is added, so that
+     *  tables derived from this permutation can tell they are stale. */
+    int version() {
+        return _version;
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -117,15 +155,8 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int size = 0;
-        for (String string : _cycles) {
-            size += string.length();
-        }
-        if (size < _alphabet.size()) {
-            return false;
-        }
-        for (String str : _cycles) {
-            if (str.length() == 1) {
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
@@ -134,5 +165,16 @@ class Permutation {
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
-    private String[] _cycles;
+
+    /** _forward[K] is the image of K under this permutation. */
+    private int[] _forward;
+
+    /** _inverse[K] is the preimage of K under this permutation. */
+    private int[] _inverse;
+
+    /** _cycled[K] is true iff K already appears in some cycle. */
+    private boolean[] _cycled;
+
+    /** Number of calls to addCycle so far. */
+    private int _version;
 }
@@ -52,4 +52,49 @@ public class PermutationTest {
         Permutation p = new Permutation("(BEACD)", new Alphabet("ABCDE"));
         assertEquals(5, p.size());
     }
+
+    @Test
+    public void checkNavalA() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm("Rotor " + name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void checkAddCycle() {
+        perm = new Permutation("(AELTPHQXRU) (BKNW)", UPPER);
+        perm.addCycle("CMOY");
+        perm.addCycle("DFG");
+        perm.addCycle("IV");
+        perm.addCycle("JZ");
+        checkPerm("added cycles", UPPER_STRING, NAVALA_MAP.get("I"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedCycle() {
+        perm = new Permutation("(AB) (CD)", UPPER);
+        perm.addCycle("DE");
+    }
+
+    @Test
+    public void checkCodePoints() {
+        Alphabet supp = new Alphabet("ABC\ud835\udd38\ud835\udd39");
+        Permutation p =
+            new Permutation("(A\ud835\udd38) (B \ud835\udd39 C)", supp);
+        int[] expected = { 3, 4, 1, 0, 2 };
+        for (int i = 0; i < expected.length; i += 1) {
+            assertEquals(expected[i], p.permute(i));
+            assertEquals(i, p.invert(expected[i]));
+        }
+        assertEquals('B', p.permute('C'));
+    }
+
+    @Test
+    public void checkDerangement() {
+        assertTrue(new Permutation(NAVALA.get("B"), UPPER).derangement());
+        assertFalse(new Permutation(NAVALA.get("I"), UPPER).derangement());
+        assertFalse(new Permutation("(BACD)", new Alphabet("ABCDE"))
+                    .derangement());
+    }
 }
@@ -53,12 +53,54 @@ class Rotor {
     /** Set setting() to character CPOSN. */
     void set(char cposn) { set(alphabet().toInt(cposn)); }
 
+    /** Return my ring setting: the offset of my wiring from the letter
+     *  shown at my setting.  My notches move with the letters, not the
+     *  wiring. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to RING. */
+    void setRing(int ring) {
+        _ring = ring;
+    }
+
+    /** Set ring() to character CRING. */
+    void setRing(char cring) {
+        setRing(alphabet().toInt(cring));
+    }
+
+    /** Return the offset of my wiring at my current setting and ring
+     *  setting. */
+    private int offset() {
+        return _permutation.wrap(_setting - _ring);
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        p += setting();
+        return convertForward(p, offset());
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation. */
+    int convertBackward(int e) {
+        return convertBackward(e, offset());
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation, as if my setting were POSN and my ring
+     *  setting 0.  Does not depend on or change my own settings. */
+    int convertForward(int p, int posn) {
+        if (_compiled != _permutation.version()) {
+            compile();
+        }
+        if (_forwardTable != null) {
+            return _forwardTable[posn][p];
+        }
+        p += posn;
         int result = permutation().permute(p);
-        result -= setting();
+        result -= posn;
         if (result < 0) {
             return size() + result;
         }
@@ -66,23 +108,112 @@ class Rotor {
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
-     *  according to the inverse of my permutation. */
-    int convertBackward(int e) {
-        e += setting();
+     *  according to the inverse of my permutation, as if my setting were
+     *  POSN and my ring setting 0.  Does not depend on or change my own
+     *  settings. */
+    int convertBackward(int e, int posn) {
+        if (_compiled != _permutation.version()) {
+            compile();
+        }
+        if (_backwardTable != null) {
+            return _backwardTable[posn][e];
+        }
+        e += posn;
         int result = permutation().invert(e);
-        result -= setting();
+        result -= posn;
         if (result < 0) {
             return result + size();
         }
         return result;
     }
 
+    /** Fill in _forwardTable and _backwardTable with the effective
+     *  mapping of my permutation at each of my settings, unless my
+     *  alphabet is too large for that to be worthwhile, or they are
+     *  already up to date.  The tables are complete before they are
+     *  stored, and _compiled is stored last, so I may be compiled lazily
+     *  and shared between threads as long as my permutation is not
+     *  changed. */
+    void compile() {
+        int version = _permutation.version();
+        if (_compiled == version) {
+            return;
+        }
+        int n = size();
+        if (n > MAX_TABLE_SIZE) {
+            _forwardTable = _backwardTable = null;
+            _compiled = version;
+            return;
+        }
+        int[][] forward = new int[n][n];
+        int[][] backward = new int[n][n];
+        for (int s = 0; s < n; s += 1) {
+            for (int p = 0; p < n; p += 1) {
+                int e = _permutation.wrap(_permutation.permute(p + s) - s);
+                forward[s][p] = e;
+                backward[s][e] = p;
+            }
+        }
+        _forwardTable = forward;
+        _backwardTable = backward;
+        _compiled = version;
+    }
+
+    /** Return a table whose row S maps each P to convertForward(P) at
+     *  setting S and ring setting RING, or null if my alphabet is too
+     *  large for tables.  The rows are those of my own tables, rotated, so
+     *  they must not be modified. */
+    int[][] forwardRows(int ring) {
+        compile();
+        return rotate(_forwardTable, ring);
+    }
+
+    /** Return a table whose row S maps each E to convertBackward(E) at
+     *  setting S and ring setting RING, or null if my alphabet is too
+     *  large for tables.  The rows must not be modified. */
+    int[][] backwardRows(int ring) {
+        compile();
+        return rotate(_backwardTable, ring);
+    }
+
+    /** Return the rows of TABLE (if not null) rotated so that row S of
+     *  the result is row S - RING of TABLE. */
+    private static int[][] rotate(int[][] table, int ring) {
+        if (table == null || ring == 0) {
+            return table;
+        }
+        int n = table.length;
+        int[][] result = new int[n][];
+        for (int s = 0; s < n; s += 1) {
+            result[s] = table[Math.floorMod(s - ring, n)];
+        }
+        return result;
+    }
+
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff setting POSN is one of my notches.  By default,
+     *  I have none. */
+    boolean atNotch(int posn) {
         return false;
     }
 
+    /** Return the number of advances needed before I am at a notch: 0
+     *  if I am at one now, and -1 if I have no notches. */
+    int notchDistance() {
+        return notchDistance(_setting);
+    }
+
+    /** Return the number of advances needed from setting POSN to one of
+     *  my notches, or -1 if I have none. */
+    int notchDistance(int posn) {
+        return -1;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -100,4 +231,21 @@ class Rotor {
 
     /** _setting. */
     private int _setting;
+
+    /** My ring setting. */
+    private int _ring;
+
+    /** Largest alphabet for which I precompute per-setting tables. */
+    static final int MAX_TABLE_SIZE = 256;
+
+    /** _forwardTable[S][P] is convertForward(P) at setting S. */
+    private int[][] _forwardTable;
+
+    /** _backwardTable[S][E] is convertBackward(E) at setting S. */
+    private int[][] _backwardTable;
+
+    /** Version of _permutation from which my tables were built.  It is
+     *  stored after the tables, so a thread that reads it also sees them,
+     *  and any thread may compile me when it first needs my tables. */
+    private volatile int _compiled = -1;
 }
@@ -0,0 +1,528 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running local server converting messages for machines
+ *  configured like a given one, so that clients need not start a JVM for
+ *  each message.  It listens on a loopback TCP port or a Unix-domain
+ *  socket and speaks a line protocol in UTF-8: each request is a setting
+ *  line, in the same form as in an input file, followed by a message
+ *  line.  Each request is answered by one line, holding either the
+ *  conversion of the message (whose blanks are ignored), from the given
+ *  settings, in groups of five, or "ERROR: " and a description of what
+ *  was wrong with the request.  Requests on one connection are answered
+ *  in order, and may be sent without waiting for earlier answers.
+ *
+ *  <p>Each connection is handled on its own virtual thread where the JVM
+ *  provides them, and otherwise on a pooled thread.  Setting lines are
+ *  compiled through a SettingsCache shared by all connections.  The
+ *  server counts requests and records their latencies, and reports them
+ *  when it shuts down.
+ *
+ *  <p>The configuration may be replaced while the server runs, either
+ *  directly or by watching its file.  A new configuration is read and
+ *  compiled off to the side and then swapped in at once: requests under
+ *  way finish with the configuration they started with, later ones use
+ *  the new one, and no request waits for the change.
+ *  @author Seongho Lee
+ */
+final class Server implements AutoCloseable {
+
+    /** A server for machines configured like CONFIG, as returned by
+     *  Main.readConfig, listening at ADDRESS: an InetSocketAddress or a
+     *  UnixDomainSocketAddress. */
+    Server(Machine config, SocketAddress address) {
+        _settings = new AtomicReference<>(
+            new SettingsCache(config, Batch.DEFAULT_CACHE_SIZE));
+        ServerSocketChannel channel = null;
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                channel =
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            } else {
+                channel = ServerSocketChannel.open();
+            }
+            channel.bind(address);
+        } catch (IOException | UnsupportedOperationException excp) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeExcp) {
+                    /* Ignore: the original failure is reported. */
+                }
+            }
+            throw error("could not listen at %s: %s", address,
+                        excp.getMessage());
+        }
+        _channel = channel;
+        _socketFile = address instanceof UnixDomainSocketAddress
+            ? ((UnixDomainSocketAddress) address).getPath() : null;
+        _executor = newExecutor();
+    }
+
+    /** Return the address described by NAME: a port number on the
+     *  loopback interface (0 for any free port), or else the path of a
+     *  Unix-domain socket. */
+    static SocketAddress address(String name) {
+        if (name.matches("\\d{1,5}")) {
+            int port = Integer.parseInt(name);
+            if (port > MAX_PORT) {
+                throw error("port %d is out of range (0..%d)", port,
+                            MAX_PORT);
+            }
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         port);
+        }
+        return UnixDomainSocketAddress.of(name);
+    }
+
+    /** Return an executor running each task on a new virtual thread, or,
+     *  if the JVM has none, on a cached pool of daemon threads. */
+    private static ExecutorService newExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "enigma-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Return the address at which I am listening. */
+    SocketAddress address() {
+        try {
+            return _channel.getLocalAddress();
+        } catch (IOException excp) {
+            throw error("server closed");
+        }
+    }
+
+    /** Accept connections and handle them until I am closed or the
+     *  calling thread is interrupted.  A failure to accept a connection is
+     *  reported on LOG, and accepting resumes after a short pause, so that
+     *  a lasting failure, such as running out of file descriptors, does not
+     *  keep a processor busy. */
+    void serve(PrintStream log) {
+        _start = System.nanoTime();
+        while (true) {
+            SocketChannel client;
+            try {
+                client = _channel.accept();
+            } catch (ClosedChannelException excp) {
+                return;
+            } catch (IOException excp) {
+                if (!_channel.isOpen()) {
+                    return;
+                }
+                log.printf("enigma server: could not accept a connection: "
+                           + "%s%n", excp.getMessage());
+                try {
+                    Thread.sleep(ACCEPT_RETRY_MILLIS);
+                } catch (InterruptedException interrupt) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            _connections.incrementAndGet();
+            _executor.execute(() -> handle(client));
+        }
+    }
+
+    /** Use machines configured like CONFIG, as returned by
+     *  Main.readConfig, for all requests from now on.  The setting lines
+     *  cached under the old configuration that are still valid are
+     *  compiled for the new one on the calling thread, while requests go
+     *  on using the old one, so that the change does not leave requests
+     *  to start from an empty cache. */
+    void reload(Machine config) {
+        SettingsCache cache =
+            new SettingsCache(config, Batch.DEFAULT_CACHE_SIZE);
+        cache.warm(_settings.get());
+        _settings.set(cache);
+        _reloads.incrementAndGet();
+    }
+
+    /** Watch the configuration file named CONFIG, and each time it is
+     *  changed or replaced, read it again in the background and reload
+     *  it, reporting the outcome on LOG.  If the new contents are not a
+     *  valid configuration, the current one stays in use. */
+    void watch(String config, PrintStream log) {
+        Path file = Paths.get(config).toAbsolutePath();
+        Path dir = file.getParent();
+        try {
+            _watcher = dir.getFileSystem().newWatchService();
+            dir.register(_watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                         StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException excp) {
+            throw error("could not watch %s: %s", config, excp.getMessage());
+        }
+        Thread thread = new Thread(() -> watchLoop(config, file.getFileName(),
+                                                   log),
+                                   "enigma-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Wait for changes to the file named NAME in the directory being
+     *  watched, and reload it, as CONFIG, after each burst of changes,
+     *  reporting on LOG.  A failure to reload is reported and the current
+     *  configuration kept, whatever its cause.  Returns when watching
+     *  stops. */
+    private void watchLoop(String config, Path name, PrintStream log) {
+        try {
+            while (true) {
+                WatchKey key = _watcher.take();
+                boolean changed = changed(key, name);
+                while ((key = _watcher.poll(SETTLE_MILLIS,
+                                            TimeUnit.MILLISECONDS)) != null) {
+                    changed |= changed(key, name);
+                }
+                if (!changed) {
+                    continue;
+                }
+                try {
+                    reload(Main.readConfig(config));
+                    log.printf("enigma server: reloaded %s%n", config);
+                } catch (EnigmaException excp) {
+                    log.printf("enigma server: could not reload %s: %s%n",
+                               config, excp.getMessage());
+                } catch (RuntimeException excp) {
+                    log.printf("enigma server: could not reload %s: %s%n",
+                               config, excp);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            return;
+        }
+    }
+
+    /** Return true iff any of the events of KEY may concern the file
+     *  NAME, and make KEY ready for further events. */
+    private static boolean changed(WatchKey key, Path name) {
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            result |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                || name.equals(event.context());
+        }
+        key.reset();
+        return result;
+    }
+
+    /** Answer the requests on CLIENT until it closes the connection.  A
+     *  request with a line of more than MAX_LINE characters is answered
+     *  with an error, and the rest of that line is discarded. */
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            Reader input = Channels.newReader(channel,
+                                              StandardCharsets.UTF_8
+                                              .newDecoder(), -1);
+            Writer output = Channels.newWriter(channel,
+                                               StandardCharsets.UTF_8
+                                               .newEncoder(), -1);
+            LineReader in = new LineReader(input);
+            BufferedWriter out = new BufferedWriter(output, BUFFER_SIZE);
+            StringBuilder settings = new StringBuilder(),
+                message = new StringBuilder(),
+                reply = new StringBuilder();
+            while (in.readLine(settings) && in.readLine(message)) {
+                long start = System.nanoTime();
+                reply.setLength(0);
+                if (settings.length() > MAX_LINE
+                    || message.length() > MAX_LINE) {
+                    _errors.incrementAndGet();
+                    reply.append("ERROR: line longer than ")
+                        .append(MAX_LINE).append(" characters");
+                } else {
+                    answer(settings.toString(), message.toString(), reply);
+                }
+                out.append(reply).append('\n');
+                record(System.nanoTime() - start);
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            /* The client has gone; nothing more can be sent to it. */
+        }
+    }
+
+    /** A buffered source of lines that keeps at most MAX_LINE + 1
+     *  characters of any one line. */
+    private static final class LineReader {
+
+        /** A LineReader of the characters from INPUT. */
+        LineReader(Reader input) {
+            _input = input;
+        }
+
+        /** Set LINE to the next line, without its terminator ("\n" or
+         *  "\r\n"), keeping at most MAX_LINE + 1 characters, so that a
+         *  line too long to answer can be recognized.  Return false if
+         *  there are no more lines. */
+        boolean readLine(StringBuilder line) throws IOException {
+            line.setLength(0);
+            boolean any = false, cut = false;
+            while (true) {
+                if (_pos == _end) {
+                    int n = _input.read(_buffer);
+                    if (n < 0) {
+                        return any;
+                    }
+                    _pos = 0;
+                    _end = n;
+                }
+                any = true;
+                int i;
+                for (i = _pos; i < _end && _buffer[i] != '\n'; i += 1) {
+                    continue;
+                }
+                int room = MAX_LINE + 1 - line.length();
+                cut |= i - _pos > room;
+                line.append(_buffer, _pos, Math.min(i - _pos, room));
+                if (i < _end) {
+                    _pos = i + 1;
+                    int last = line.length() - 1;
+                    if (!cut && last >= 0 && line.charAt(last) == '\r') {
+                        line.setLength(last);
+                    }
+                    return true;
+                }
+                _pos = _end;
+            }
+        }
+
+        /** Return true iff some input is available without blocking. */
+        boolean ready() throws IOException {
+            return _pos < _end || _input.ready();
+        }
+
+        /** Source of characters. */
+        private final Reader _input;
+
+        /** Characters read from _input; _buffer[_pos .. _end-1] are not
+         *  yet consumed. */
+        private final char[] _buffer = new char[BUFFER_SIZE];
+
+        /** Index of the next unconsumed character in _buffer. */
+        private int _pos;
+
+        /** Index just past the last character read into _buffer. */
+        private int _end;
+    }
+
+    /** Append the answer to the request with setting line SETTINGS and
+     *  message MESSAGE to REPLY.  Whitespace in MESSAGE is ignored, as it
+     *  is by Main. */
+    private void answer(String settings, String message,
+                        StringBuilder reply) {
+        try {
+            Machine machine = _settings.get().get(settings).newMachine();
+            Alphabet alphabet = machine.alphabet();
+            int group = 0, letters = 0;
+            for (int i = 0; i < message.length(); ) {
+                int c = message.codePointAt(i);
+                i += Character.charCount(c);
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                if (group == 5) {
+                    reply.append(' ');
+                    group = 0;
+                }
+                reply.appendCodePoint(alphabet.toCodePoint(
+                                          machine.convert(alphabet.toInt(c))));
+                group += 1;
+                letters += 1;
+            }
+            _letters.addAndGet(letters);
+        } catch (EnigmaException excp) {
+            _errors.incrementAndGet();
+            reply.setLength(0);
+            reply.append("ERROR: ").append(excp.getMessage());
+        }
+    }
+
+    /** Record a request answered in NANOS nanoseconds. */
+    private void record(long nanos) {
+        _requests.incrementAndGet();
+        _latencies.incrementAndGet(63 - Long.numberOfLeadingZeros(
+                                           Math.max(1, nanos)));
+        _maxLatency.accumulateAndGet(nanos, Math::max);
+    }
+
+    /** Return the number of requests answered so far. */
+    long requests() {
+        return _requests.get();
+    }
+
+    /** Return the number of times the configuration has been replaced. */
+    long reloads() {
+        return _reloads.get();
+    }
+
+    /** Stop accepting connections, close my socket, and wait briefly for
+     *  open connections to finish. */
+    @Override
+    public void close() {
+        try {
+            if (_watcher != null) {
+                _watcher.close();
+            }
+            _channel.close();
+            if (_socketFile != null) {
+                Files.deleteIfExists(_socketFile);
+            }
+        } catch (IOException excp) {
+            /* Ignore: the server is shutting down. */
+        }
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Print the numbers of connections, requests, errors and letters,
+     *  the throughput, and the distribution of latencies to OUT.
+     *  Latency percentiles are upper bounds, to within a factor of 2. */
+    void report(PrintStream out) {
+        double seconds = (System.nanoTime() - _start) * 1e-9;
+        long requests = _requests.get();
+        out.printf("enigma server: %d connections, %d requests (%d errors),"
+                   + " %d letters in %.1f s, %d configuration reloads%n",
+                   _connections.get(), requests, _errors.get(),
+                   _letters.get(), seconds, _reloads.get());
+        out.printf("  throughput: %.0f requests/s, %.0f letters/s%n",
+                   requests / seconds, _letters.get() / seconds);
+        if (requests > 0) {
+            out.printf("  latency: p50 <= %s, p90 <= %s, p99 <= %s, "
+                       + "max %s%n",
+                       duration(percentile(requests, 0.50)),
+                       duration(percentile(requests, 0.90)),
+                       duration(percentile(requests, 0.99)),
+                       duration(_maxLatency.get()));
+        }
+    }
+
+    /** Return an upper bound in nanoseconds on the latency of FRACTION of
+     *  the REQUESTS recorded. */
+    private long percentile(long requests, double fraction) {
+        long seen = 0;
+        for (int b = 0; b < _latencies.length(); b += 1) {
+            seen += _latencies.get(b);
+            if (seen >= fraction * requests) {
+                return Math.min(2L << b, _maxLatency.get());
+            }
+        }
+        return _maxLatency.get();
+    }
+
+    /** Return NANOS nanoseconds in readable units. */
+    private static String duration(long nanos) {
+        if (nanos < 1000L) {
+            return nanos + " ns";
+        } else if (nanos < 1000000L) {
+            return String.format("%.1f us", nanos * 1e-3);
+        } else {
+            return String.format("%.1f ms", nanos * 1e-6);
+        }
+    }
+
+    /** Size of the per-connection buffers. */
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    /** Largest TCP port number. */
+    private static final int MAX_PORT = 0xffff;
+
+    /** Longest setting or message line answered, in characters. */
+    static final int MAX_LINE = 1 << 20;
+
+    /** Milliseconds to pause after failing to accept a connection. */
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+
+    /** Seconds to wait for open connections when closing. */
+    private static final long SHUTDOWN_WAIT = 5;
+
+    /** Milliseconds without further changes to the configuration file
+     *  before it is read again, so that it is not read half-written. */
+    private static final long SETTLE_MILLIS = 100;
+
+    /** Compiled setting lines shared by all connections, for the current
+     *  configuration. */
+    private final AtomicReference<SettingsCache> _settings;
+
+    /** Watches the configuration file, or null. */
+    private volatile WatchService _watcher;
+
+    /** Number of configuration reloads. */
+    private final AtomicLong _reloads = new AtomicLong();
+
+    /** The listening socket. */
+    private final ServerSocketChannel _channel;
+
+    /** File of a Unix-domain socket, removed when closed, or null. */
+    private final Path _socketFile;
+
+    /** Runs connection handlers. */
+    private final ExecutorService _executor;
+
+    /** Value of System.nanoTime() when serving began. */
+    private volatile long _start = System.nanoTime();
+
+    /** Number of connections accepted. */
+    private final AtomicLong _connections = new AtomicLong();
+
+    /** Number of requests answered. */
+    private final AtomicLong _requests = new AtomicLong();
+
+    /** Number of requests answered with an error. */
+    private final AtomicLong _errors = new AtomicLong();
+
+    /** Number of letters converted. */
+    private final AtomicLong _letters = new AtomicLong();
+
+    /** _latencies[B] is the number of requests answered in 2**B to
+     *  2**(B+1) - 1 nanoseconds. */
+    private final AtomicLongArray _latencies = new AtomicLongArray(64);
+
+    /** Longest latency, in nanoseconds. */
+    private final AtomicLong _maxLatency = new AtomicLong();
+}
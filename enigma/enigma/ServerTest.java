@@ -0,0 +1,286 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Seongho Lee
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Setting lines used by the tests. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AAAA (AQ) (EP)",
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR)",
+        "* C Gamma VI II VIII ZZAD BCDE (YF) (ZH)",
+    };
+
+    /** Return a machine configured from SETTINGS[K]. */
+    private static Machine machine(int k) {
+        Machine config = new Machine(UPPER, 5, 3, navalRotors());
+        new Settings(SETTINGS[k], 5).apply(config);
+        return config;
+    }
+
+    /** Return MSG in groups of five. */
+    private static String grouped(String msg) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            if (i > 0 && i % 5 == 0) {
+                result.append(' ');
+            }
+            result.append(msg.charAt(i));
+        }
+        return result.toString();
+    }
+
+    /** Start a server at ADDRESS, send it a pipeline of requests on each
+     *  of several concurrent connections, check the answers, and return
+     *  the server's report. */
+    private static String exercise(SocketAddress address) throws Exception {
+        Server server = new Server(new Machine(UPPER, 5, 3, navalRotors()),
+                                   address);
+        Thread serving = new Thread(() -> server.serve(System.err));
+        serving.start();
+        try {
+            Thread[] clients = new Thread[4];
+            Throwable[] failure = new Throwable[1];
+            for (int t = 0; t < clients.length; t += 1) {
+                clients[t] = new Thread(() -> {
+                    try {
+                        converse(server.address());
+                    } catch (Throwable excp) {
+                        failure[0] = excp;
+                    }
+                });
+                clients[t].start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            if (failure[0] != null) {
+                throw new AssertionError(failure[0]);
+            }
+            assertEquals(4 * 301, server.requests());
+        } finally {
+            server.close();
+        }
+        serving.join();
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        server.report(new PrintStream(report, true, "UTF-8"));
+        return report.toString("UTF-8");
+    }
+
+    /** Send 300 requests and one erroneous request to the server at
+     *  ADDRESS without waiting for answers, and check the answers. */
+    private static void converse(SocketAddress address) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            Writer out = Channels.newWriter(channel,
+                                            StandardCharsets.UTF_8.name());
+            StringBuilder requests = new StringBuilder();
+            String[] expected = new String[300];
+            for (int i = 0; i < expected.length; i += 1) {
+                String msg = "HELLO WORLD " + UPPER_STRING.substring(i % 26);
+                expected[i] = grouped(machine(i % 3).convert(msg));
+                requests.append(SETTINGS[i % 3]).append('\n')
+                    .append(msg).append('\n');
+            }
+            requests.append("* B Beta I II IX AAAA\nHELLO\n");
+            out.write(requests.toString());
+            out.flush();
+            channel.shutdownOutput();
+            BufferedReader in = new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8.name()));
+            for (String answer : expected) {
+                assertEquals(answer, in.readLine());
+            }
+            assertTrue(in.readLine().startsWith("ERROR: "));
+            assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    public void checkTcp() throws Exception {
+        String report = exercise(Server.address("0"));
+        assertTrue(report, report.contains("1204 requests (4 errors)"));
+        assertTrue(report, report.contains("latency: p50"));
+    }
+
+    @Test
+    public void checkUnixSocket() throws Exception {
+        File socket = File.createTempFile("enigma", ".sock");
+        socket.delete();
+        String report = exercise(Server.address(socket.getPath()));
+        assertTrue(report, report.contains("4 connections"));
+        assertFalse(socket.exists());
+    }
+
+    /** Return the text of a configuration of the naval rotors in which
+     *  the names of rotors I and II are exchanged iff SWAP. */
+    private static String configText(boolean swap) {
+        StringBuilder text = new StringBuilder(UPPER_STRING + "\n 5 3\n");
+        for (String[] rotor : NOTCHES) {
+            String name = rotor[0];
+            if (swap && name.matches("II?")) {
+                name = name.equals("I") ? "II" : "I";
+            }
+            text.append(' ').append(name).append(" M").append(rotor[1])
+                .append(NAVALA.get(rotor[0])).append('\n');
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            text.append(' ').append(name).append(" N")
+                .append(NAVALA.get(name)).append('\n');
+        }
+        for (String name : new String[] { "B", "C" }) {
+            text.append(' ').append(name).append(" R")
+                .append(NAVALA.get(name)).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return the answer of the server at ADDRESS to the request with
+     *  setting line SETTINGS and message MSG. */
+    private static String ask(SocketAddress address, String settings,
+                              String msg) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            Writer out = Channels.newWriter(channel,
+                                            StandardCharsets.UTF_8.name());
+            out.write(settings + "\n" + msg + "\n");
+            out.flush();
+            return new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8.name()))
+                .readLine();
+        }
+    }
+
+    /** Wait until CONDITION holds, for at most ten seconds. */
+    private static void await(BooleanSupplier condition)
+        throws InterruptedException {
+        for (int i = 0; i < 1000 && !condition.getAsBoolean(); i += 1) {
+            Thread.sleep(10);
+        }
+        assertTrue("timed out", condition.getAsBoolean());
+    }
+
+    @Test
+    public void checkReload() throws Exception {
+        File config = File.createTempFile("config", ".conf");
+        config.deleteOnExit();
+        Files.write(config.toPath(),
+                    configText(false).getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        try (Server server =
+                 new Server(Main.readConfig(config.getPath()),
+                            Server.address("0"))) {
+            server.watch(config.getPath(), new PrintStream(log, true));
+            new Thread(() -> server.serve(System.err)).start();
+            String settings = "* B Beta I II III AAAA (AQ) (EP)";
+            assertEquals("IHBDQ QMTQZ",
+                         ask(server.address(), settings, "HELLOWORLD"));
+
+            File replacement = File.createTempFile("config", ".new",
+                                                   config.getParentFile());
+            Files.write(replacement.toPath(),
+                        configText(true).getBytes(StandardCharsets.UTF_8));
+            Files.move(replacement.toPath(), config.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            await(() -> server.reloads() == 1);
+            Machine expected = new Machine(UPPER, 5, 3, navalRotors());
+            new Settings("* B Beta II I III AAAA (AQ) (EP)", 5)
+                .apply(expected);
+            String swapped = grouped(expected.convert("HELLOWORLD"));
+            assertEquals(swapped,
+                         ask(server.address(), settings, "HELLOWORLD"));
+
+            Files.write(config.toPath(),
+                        "AB\n 5 3\n X Q (AB)\n"
+                        .getBytes(StandardCharsets.UTF_8));
+            await(() -> log.toString().contains("could not reload"));
+            assertEquals(1, server.reloads());
+            assertEquals(swapped,
+                         ask(server.address(), settings, "HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void checkLongLine() throws Exception {
+        try (Server server = new Server(new Machine(UPPER, 5, 3,
+                                                    navalRotors()),
+                                        Server.address("0"))) {
+            new Thread(() -> server.serve(System.err)).start();
+            char[] letters = new char[Server.MAX_LINE + 1];
+            Arrays.fill(letters, 'A');
+            String settings = SETTINGS[0];
+            try (SocketChannel channel =
+                 SocketChannel.open(server.address())) {
+                Writer out = Channels.newWriter(channel,
+                                                StandardCharsets.UTF_8.name());
+                out.write(settings + "\n");
+                out.write(letters);
+                out.write("\n" + settings + "\r\nHELLOWORLD\r\n");
+                out.flush();
+                channel.shutdownOutput();
+                BufferedReader in = new BufferedReader(
+                    Channels.newReader(channel,
+                                       StandardCharsets.UTF_8.name()));
+                assertTrue(in.readLine().startsWith("ERROR: "));
+                assertEquals(grouped(machine(0).convert("HELLOWORLD")),
+                             in.readLine());
+                assertNull(in.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void checkAddress() {
+        InetSocketAddress tcp = (InetSocketAddress) Server.address("8080");
+        assertEquals(8080, tcp.getPort());
+        assertTrue(tcp.getAddress().isLoopbackAddress());
+        assertTrue(Server.address("/tmp/enigma.sock")
+                   instanceof UnixDomainSocketAddress);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadPort() {
+        Server.address("65536");
+    }
+
+    @Test
+    public void checkWhitespace() throws Exception {
+        try (Server server = new Server(new Machine(UPPER, 5, 3,
+                                                    navalRotors()),
+                                        Server.address("0"))) {
+            new Thread(() -> server.serve(System.err)).start();
+            assertEquals(grouped(machine(0).convert("HELLOWORLD")),
+                         ask(server.address(), SETTINGS[0],
+                             "HEL\tLO WO\u000bRLD"));
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A parsed setting line: "*" followed by the names of the rotors
+ *  (reflector first), the rotor settings, optional ring settings, and any
+ *  plugboard cycles, separated by whitespace.
+ *  @author Seongho Lee
+ */
+final class Settings {
+
+    /** The settings given by LINE for a machine with NUMROTORS slots. */
+    Settings(String line, int numRotors) {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length < numRotors + 2 || !fields[0].equals("*")) {
+            throw error("bad setting line: %s", line);
+        }
+        _rotors = new String[numRotors];
+        System.arraycopy(fields, 1, _rotors, 0, numRotors);
+        _positions = fields[numRotors + 1];
+        int first = numRotors + 2;
+        if (first < fields.length && !fields[first].startsWith("(")) {
+            _rings = fields[first];
+            first += 1;
+        } else {
+            _rings = null;
+        }
+        StringBuilder plugboard = new StringBuilder();
+        for (int i = first; i < fields.length; i += 1) {
+            plugboard.append(fields[i]);
+        }
+        _plugboard = plugboard.toString();
+    }
+
+    /** Return the names of the rotors, reflector first. */
+    String[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Return the rotor settings. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Return the ring settings, or null if none were given. */
+    String rings() {
+        return _rings;
+    }
+
+    /** Return the plugboard cycles, without blanks. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Return a string identifying everything but the rotor settings:
+     *  two Settings with the same key describe the same MachineSpec. */
+    String specKey() {
+        return String.join(" ", _rotors) + " " + (_rings == null ? "" : _rings)
+            + " " + _plugboard;
+    }
+
+    /** Configure MACHINE, which must have the right number of slots, as I
+     *  describe. */
+    void apply(Machine machine) {
+        machine.insertRotors(_rotors);
+        machine.setPlugboard(new Permutation(_plugboard,
+                                             machine.alphabet()));
+        machine.setRotors(_positions);
+        if (_rings != null) {
+            machine.setRings(_rings);
+        }
+    }
+
+    /** Names of the rotors. */
+    private final String[] _rotors;
+
+    /** Rotor settings. */
+    private final String _positions;
+
+    /** Ring settings, or null. */
+    private final String _rings;
+
+    /** Plugboard cycles. */
+    private final String _plugboard;
+}
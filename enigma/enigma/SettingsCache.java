@@ -0,0 +1,205 @@
+package enigma;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded cache of compiled setting lines for machines configured like
+ *  a given one.  Lines are looked up after collapsing their whitespace, so
+ *  a line seen before is neither parsed nor compiled again.  Lines that
+ *  differ only in their rotor settings share one MachineSpec, so its
+ *  tables are built once.  Both are kept for the most recently used
+ *  CAPACITY keys.  A SettingsCache may be used by several threads at once.
+ *  @author Seongho Lee
+ */
+final class SettingsCache {
+
+    /** A setting line, compiled. */
+    static final class Compiled {
+
+        /** A compiled setting line describing SPEC with rotor settings
+         *  POSNS, indexed by slot. */
+        Compiled(MachineSpec spec, int[] posns) {
+            _spec = spec;
+            _posns = posns;
+        }
+
+        /** Return the machine description. */
+        MachineSpec spec() {
+            return _spec;
+        }
+
+        /** Configure MACHINE as I describe. */
+        void apply(Machine machine) {
+            machine.setSpec(_spec);
+            machine.setRotors(_posns);
+        }
+
+        /** Return a new machine configured as I describe. */
+        Machine newMachine() {
+            Machine machine = _spec.newMachine();
+            machine.setRotors(_posns);
+            return machine;
+        }
+
+        /** The machine description. */
+        private final MachineSpec _spec;
+
+        /** The rotor settings. */
+        private final int[] _posns;
+    }
+
+    /** A cache for machines configured like CONFIG, as returned by
+     *  Main.readConfig, holding up to CAPACITY > 0 lines and as many
+     *  MachineSpecs. */
+    SettingsCache(Machine config, int capacity) {
+        if (capacity <= 0) {
+            throw error("settings cache capacity must be positive");
+        }
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _pawls = config.numPawls();
+        _catalogue = config.allRotors();
+        _lines = lruMap(capacity);
+        _specs = lruMap(capacity);
+    }
+
+    /** Return an empty access-ordered map holding at most CAPACITY
+     *  entries. */
+    private static <V> LinkedHashMap<String, V> lruMap(int capacity) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> e) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Return the compiled form of setting line LINE. */
+    Compiled get(String line) {
+        String key = normalize(line);
+        Compiled result;
+        synchronized (this) {
+            result = _lines.get(key);
+            if (result != null) {
+                _hits += 1;
+                return result;
+            }
+            _misses += 1;
+        }
+        Settings settings = new Settings(key, _numRotors);
+        String specKey = settings.specKey();
+        MachineSpec spec;
+        synchronized (this) {
+            spec = _specs.get(specKey);
+        }
+        if (spec == null) {
+            Machine machine = new Machine(_alphabet, _numRotors, _pawls,
+                                          _catalogue);
+            settings.apply(machine);
+            spec = machine.spec();
+        }
+        int[] given = _alphabet.toInts(settings.positions());
+        if (given.length != _numRotors - 1) {
+            throw error("setting %s has the wrong length",
+                        settings.positions());
+        }
+        int[] posns = new int[_numRotors];
+        System.arraycopy(given, 0, posns, 1, given.length);
+        result = new Compiled(spec, posns);
+        synchronized (this) {
+            _specs.put(specKey, spec);
+            _lines.put(key, result);
+        }
+        return result;
+    }
+
+    /** Compile in me each setting line cached by OLD, least recently used
+     *  first, so that the lines in use under an old configuration are
+     *  ready, together with their MachineSpecs, under mine.  Lines that are
+     *  not valid for my configuration are skipped.  Warming counts as
+     *  neither hits nor misses. */
+    void warm(SettingsCache old) {
+        String[] lines;
+        synchronized (old) {
+            lines = old._lines.keySet().toArray(new String[0]);
+        }
+        for (String line : lines) {
+            try {
+                get(line);
+            } catch (EnigmaException excp) {
+                /* Not valid under my configuration: leave it out. */
+            }
+        }
+        synchronized (this) {
+            _hits = _misses = 0;
+        }
+    }
+
+    /** Return LINE with leading and trailing whitespace removed and each
+     *  other run of whitespace replaced by a single blank. */
+    static String normalize(String line) {
+        StringBuilder result = new StringBuilder(line.length());
+        boolean blank = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                blank = result.length() > 0;
+            } else {
+                if (blank) {
+                    result.append(' ');
+                    blank = false;
+                }
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the number of setting lines cached. */
+    synchronized int lines() {
+        return _lines.size();
+    }
+
+    /** Return the number of MachineSpecs cached. */
+    synchronized int specs() {
+        return _specs.size();
+    }
+
+    /** Return the number of lookups found in the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups not found in the cache. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Alphabet of the machines. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** The available rotors. */
+    private final Collection<Rotor> _catalogue;
+
+    /** Compiled setting lines, by normalized line, least recently used
+     *  first. */
+    private final LinkedHashMap<String, Compiled> _lines;
+
+    /** MachineSpecs, by Settings.specKey, least recently used first. */
+    private final LinkedHashMap<String, MachineSpec> _specs;
+
+    /** Number of lookups found in the cache. */
+    private long _hits;
+
+    /** Number of lookups not found in the cache. */
+    private long _misses;
+}
@@ -0,0 +1,213 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** The complete sequence of substitutions performed by a machine from
+ *  given settings, precomputed so that each letter costs one table lookup
+ *  and any position in a message can be reached at once.
+ *
+ *  <p>A machine's rotor settings follow a fixed sequence in which each
+ *  state determines the next, so from any start the sequence passes
+ *  through a transient of MU states (settings, such as some double-stepping
+ *  ones, that are never reached again) and then repeats a cycle of
+ *  LAMBDA states forever.  Both are found without storing any states, and
+ *  the substitution at each of the MU + LAMBDA states is stored as one
+ *  row of a flat int table outside the heap.  Letter number I of a
+ *  message then uses row I if I < MU + LAMBDA, and otherwise row MU + (I -
+ *  MU) mod LAMBDA.
+ *
+ *  <p>The table is immutable and shared by copies, each of which keeps
+ *  its own position, so copies may be used by different threads.
+ *  @author Seongho Lee
+ */
+final class StateCycle {
+
+    /** The sequence of substitutions performed by MACHINE from its
+     *  current settings, which must have rotors inserted.  MACHINE is not
+     *  changed.  It is an error if the table would take more than BUDGET
+     *  bytes. */
+    StateCycle(Machine machine, long budget) {
+        if (machine.spec() == null) {
+            throw error("no rotors inserted");
+        }
+        _alphabet = machine.alphabet();
+        int n = _alphabet.size();
+        long maxRows = Math.min(budget, MAX_BYTES) / (Integer.BYTES * n);
+        Machine start = machine.copy();
+        start.setCacheCapacity(0);
+        long lambda = period(start, maxRows);
+        long mu = transientLength(start, lambda, maxRows);
+        if (mu + lambda > maxRows) {
+            throw error("%d states do not fit in %d bytes", mu + lambda,
+                        budget);
+        }
+        _mu = (int) mu;
+        _lambda = (int) lambda;
+        _rows = _mu + _lambda;
+        _table = ByteBuffer.allocateDirect(Integer.BYTES * n * _rows)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+        int[] row = new int[n];
+        Machine walker = start.copy();
+        for (int r = 0; r < _rows; r += 1) {
+            walker.seek(1);
+            walker.substitution(row);
+            _table.put(row);
+        }
+    }
+
+    /** A copy of CYCLE at the same position, sharing its table. */
+    private StateCycle(StateCycle cycle) {
+        _alphabet = cycle._alphabet;
+        _mu = cycle._mu;
+        _lambda = cycle._lambda;
+        _rows = cycle._rows;
+        _table = cycle._table;
+        _position = cycle._position;
+        _row = cycle._row;
+    }
+
+    /** Return the period of the sequence of states of MACHINE from its
+     *  current settings, using Brent's algorithm, which steps a copy of
+     *  MACHINE about twice as many times as the transient and period
+     *  together.  It is an error if the period exceeds MAXROWS. */
+    private static long period(Machine machine, long maxRows) {
+        Machine tortoise = machine.copy(), hare = machine.copy();
+        hare.seek(1);
+        long power = 1, lambda = 1;
+        while (!sameState(tortoise, hare)) {
+            if (power == lambda) {
+                if (power > maxRows) {
+                    throw error("period exceeds %d states", maxRows);
+                }
+                tortoise = hare.copy();
+                power *= 2;
+                lambda = 0;
+            }
+            hare.seek(1);
+            lambda += 1;
+        }
+        return lambda;
+    }
+
+    /** Return the number of states of MACHINE, from its current settings,
+     *  before the first state that recurs every LAMBDA steps.  It is an
+     *  error if that exceeds MAXROWS. */
+    private static long transientLength(Machine machine, long lambda,
+                                        long maxRows) {
+        Machine tortoise = machine.copy(), hare = machine.copy();
+        hare.seek(lambda);
+        long mu = 0;
+        while (!sameState(tortoise, hare)) {
+            if (mu > maxRows) {
+                throw error("transient exceeds %d states", maxRows);
+            }
+            tortoise.seek(1);
+            hare.seek(1);
+            mu += 1;
+        }
+        return mu;
+    }
+
+    /** Return true iff A and B have the same rotor settings. */
+    private static boolean sameState(Machine a, Machine b) {
+        for (int k = 1; k < a.numRotors(); k += 1) {
+            if (a.setting(k) != b.setting(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a copy of me at my current position, sharing my table. */
+    StateCycle copy() {
+        return new StateCycle(this);
+    }
+
+    /** Return the number of states before the cycle begins. */
+    int transientLength() {
+        return _mu;
+    }
+
+    /** Return the number of states in the cycle. */
+    int period() {
+        return _lambda;
+    }
+
+    /** Return the number of letters converted (or skipped) so far. */
+    long position() {
+        return _position;
+    }
+
+    /** Move to position POSN >= 0, as if POSN letters had been converted
+     *  from the start, in constant time. */
+    void setPosition(long posn) {
+        if (posn < 0) {
+            throw error("negative position");
+        }
+        _position = posn;
+        _row = posn < _rows ? (int) posn
+            : _mu + (int) ((posn - _mu) % _lambda);
+    }
+
+    /** Skip STEPS >= 0 letters, in constant time. */
+    void seek(long steps) {
+        setPosition(_position + steps);
+    }
+
+    /** Return the conversion of C (an index in the range 0..alphabet
+     *  size - 1) by the machine at my position, and advance. */
+    int convert(int c) {
+        int result = _table.get(_row * _alphabet.size() + c);
+        _position += 1;
+        _row += 1;
+        if (_row == _rows) {
+            _row = _mu;
+        }
+        return result;
+    }
+
+    /** Return the conversion of MSG from my position, skipping blanks,
+     *  and advance past it. */
+    String convert(String msg) {
+        StringBuilder result = new StringBuilder(msg.length());
+        for (int i = 0; i < msg.length(); ) {
+            int c = msg.codePointAt(i);
+            i += Character.charCount(c);
+            if (c != ' ') {
+                result.appendCodePoint(
+                    _alphabet.toCodePoint(convert(_alphabet.toInt(c))));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Largest table that can be allocated, in bytes. */
+    private static final long MAX_BYTES =
+        Integer.MAX_VALUE - Integer.MAX_VALUE % Integer.BYTES;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Length of the transient. */
+    private final int _mu;
+
+    /** Length of the cycle. */
+    private final int _lambda;
+
+    /** Number of rows of _table: _mu + _lambda. */
+    private final int _rows;
+
+    /** Row R, at R * alphabet size, is the substitution used for the
+     *  letter converted in state R. */
+    private final IntBuffer _table;
+
+    /** Number of letters converted or skipped. */
+    private long _position;
+
+    /** Row of _table used for the next letter. */
+    private int _row;
+}
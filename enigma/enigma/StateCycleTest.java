@@ -0,0 +1,84 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StateCycle class.
+ *  @author Seongho Lee
+ */
+public class StateCycleTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Budget large enough for any 3-rotor naval machine. */
+    private static final long BUDGET = 1L << 26;
+
+    /** Return a naval machine with rotors B Beta I II III at SETTING and
+     *  plugboard (AQ) (EP). */
+    private static Machine naval(String setting) {
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+        machine.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        return machine;
+    }
+
+    /** Return a message of N letters. */
+    private static String message(int n) {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            msg.append(UPPER_STRING.charAt((i * 7 + i / 26) % 26));
+        }
+        return msg.toString();
+    }
+
+    @Test
+    public void checkConvert() {
+        Machine machine = naval("AXLE");
+        StateCycle cycle = new StateCycle(machine, BUDGET);
+        assertEquals(26 * 25 * 26, cycle.period());
+        assertEquals(0, cycle.transientLength());
+        String msg = message(40000);
+        assertEquals(machine.convert(msg), cycle.convert(msg));
+        assertEquals(40000, cycle.position());
+    }
+
+    @Test
+    public void checkTransient() {
+        Machine machine = naval("AAEA");
+        StateCycle cycle = new StateCycle(machine, BUDGET);
+        assertTrue(cycle.transientLength() > 0);
+        assertEquals(26 * 25 * 26, cycle.period());
+        String msg = message(40000);
+        assertEquals(machine.convert(msg), cycle.convert(msg));
+    }
+
+    @Test
+    public void checkSeek() {
+        StateCycle cycle = new StateCycle(naval("AAEA"), BUDGET);
+        for (long n : new long[] { 0, 1, 26, 16899, 16900, 456789 }) {
+            Machine machine = naval("AAEA");
+            machine.seek(n);
+            StateCycle sought = cycle.copy();
+            sought.setPosition(n);
+            assertEquals("seek " + n, machine.convert("HELLOWORLD"),
+                         sought.convert("HELLOWORLD"));
+        }
+        StateCycle far = cycle.copy(), near = cycle.copy();
+        far.seek(16900L * 1000000 + 17);
+        near.seek(16900 + 17);
+        assertEquals(near.convert("HELLOWORLD"), far.convert("HELLOWORLD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBudget() {
+        new StateCycle(naval("AXLE"), 1000000);
+    }
+
+}
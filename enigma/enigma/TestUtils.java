@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +128,32 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Notches of the naval moving rotors. */
+    static final String[][] NOTCHES = {
+        { "I", "Q" }, { "II", "E" }, { "III", "V" }, { "IV", "J" },
+        { "V", "Z" }, { "VI", "ZM" }, { "VII", "ZM" }, { "VIII", "ZM" },
+    };
+
+    /** Return all of the naval rotors in the A setting. */
+    static Collection<Rotor> navalRotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String[] rotor : NOTCHES) {
+            rotors.add(new MovingRotor(rotor[0],
+                                       new Permutation(NAVALA.get(rotor[0]),
+                                                       UPPER),
+                                       rotor[1]));
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            rotors.add(new FixedRotor(name,
+                                      new Permutation(NAVALA.get(name),
+                                                      UPPER)));
+        }
+        for (String name : new String[] { "B", "C" }) {
+            rotors.add(new Reflector(name,
+                                     new Permutation(NAVALA.get(name),
+                                                     UPPER)));
+        }
+        return rotors;
+    }
+
 }
@@ -10,8 +10,19 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+        System.exit(textui.runClasses(AlphabetTest.class,
+                                      PermutationTest.class,
+                                      MovingRotorTest.class,
+                                      MachineTest.class,
+                                      KeySearchTest.class,
+                                      BombeTest.class,
+                                      CiphertextAttackTest.class,
+                                      BatchTest.class,
+                                      ConfigReaderTest.class,
+                                      BinaryConfigTest.class,
+                                      CatalogueTest.class,
+                                      StateCycleTest.class,
+                                      ServerTest.class));
     }
 
 }